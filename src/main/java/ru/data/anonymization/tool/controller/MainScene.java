@@ -16,22 +16,17 @@ import org.springframework.stereotype.Component;
 import ru.data.anonymization.tool.config.AppContext;
 import ru.data.anonymization.tool.dto.DataPreparationDto;
 import ru.data.anonymization.tool.dto.RiskDto;
+import ru.data.anonymization.tool.dto.RiskStepDto;
 import ru.data.anonymization.tool.dto.StatisticResponseDto;
-import ru.data.anonymization.tool.dto.TableData;
 import ru.data.anonymization.tool.dto.enums.MaskMethods;
 import ru.data.anonymization.tool.dto.enums.ShowMode;
 import ru.data.anonymization.tool.service.*;
 import ru.data.anonymization.tool.util.ComponentUtils;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 @Component
 @RequiredArgsConstructor
@@ -99,6 +94,8 @@ public class MainScene {
     @FXML
     private VBox riskAttribute;
     @FXML
+    private VBox sensitiveAttribute;
+    @FXML
     private VBox assessmentAttribute;
 
     @FXML
@@ -109,6 +106,14 @@ public class MainScene {
     private CheckBox ProsecutorMetricC;
     @FXML
     private CheckBox GlobalRisk;
+    @FXML
+    private CheckBox KAnonymity;
+    @FXML
+    private CheckBox DistinctLDiversity;
+    @FXML
+    private CheckBox EntropyLDiversity;
+    @FXML
+    private CheckBox TCloseness;
 
     @FXML
     private CheckBox assessmentMin;
@@ -536,6 +541,7 @@ public class MainScene {
     // Выставляем чекбоксы атрибутов для рисков и оценки потерь
     private void setColumnListForRiskAndAssessment() {
         riskAttribute.getChildren().clear();
+        sensitiveAttribute.getChildren().clear();
         assessmentAttribute.getChildren().clear();
 
         List<String> columns = tableInfoService.getColumnNames(currentTableName);
@@ -572,6 +578,34 @@ public class MainScene {
             riskAttribute.getChildren().add(checkBox);
         });
 
+        columns.forEach(col -> {
+            List<String> activeColumn = depersonalizationService.getSensitiveConfig(currentTableName);
+
+            CheckBox checkBox = new CheckBox(col);
+            checkBox.setText(col);
+            checkBox.setMnemonicParsing(false);
+            if (activeColumn != null && activeColumn.contains(col)) {
+                checkBox.setSelected(true);
+            }
+
+            checkBox.setOnAction(event -> {
+                List<String> sensitiveColumns = new ArrayList<>();
+                for (int i = 0; i < sensitiveAttribute.getChildren().size(); i++) {
+                    if (sensitiveAttribute.getChildren().get(i) instanceof CheckBox check) {
+                        if (check.isSelected()) {
+                            sensitiveColumns.add(check.getText());
+                        }
+                    }
+                }
+                if (!sensitiveColumns.isEmpty()) {
+                    depersonalizationService.addSensitiveConfig(currentTableName, sensitiveColumns);
+                } else {
+                    depersonalizationService.removeSensitiveConfig(currentTableName);
+                }
+            });
+            sensitiveAttribute.getChildren().add(checkBox);
+        });
+
         columns.forEach(col -> {
             List<String> activeColumn = depersonalizationService.getAssessmentConfig(
                     currentTableName);
@@ -695,55 +729,32 @@ public class MainScene {
                 showError("Не удалось подключиться к базе данных по предустановленным параметрам");
                 return;
             }
-
-            TableData tableData = parseCsv(file.toPath());
-            String importedTable = tableInfoService.importCsvTable(tableData);
-            refreshTables();
-            selectTableTab(importedTable);
         } catch (Exception e) {
             showError("Не удалось загрузить CSV: " + e.getMessage());
+            return;
         }
-    }
-
-    private TableData parseCsv(Path filePath) throws IOException {
-        List<String> lines = Files.readAllLines(filePath).stream()
-                .filter(line -> !line.isBlank())
-                .collect(Collectors.toList());
-
-        if (lines.isEmpty()) {
-            throw new IOException("Файл пустой или недоступен");
-        }
-
-        String delimiter = lines.get(0).contains(";") ? ";" : ",";
-        List<String> rawHeaders = Arrays.stream(lines.get(0).split(delimiter, -1))
-                .map(String::trim)
-                .collect(Collectors.toList());
-
-        List<Integer> headerIndexes = IntStream.range(0, rawHeaders.size())
-                .filter(index -> !rawHeaders.get(index).isBlank())
-                .boxed()
-                .collect(Collectors.toList());
-
-        List<String> headers = headerIndexes.stream()
-                .map(rawHeaders::get)
-                .collect(Collectors.toList());
-
-        if (headers.isEmpty()) {
-            throw new IOException("Файл не содержит валидных заголовков столбцов");
-        }
-
-        List<List<String>> rows = lines.stream()
-                .skip(1)
-                .map(line -> Arrays.stream(line.split(delimiter, -1))
-                        .map(String::trim)
-                        .collect(Collectors.toList()))
-                .map(row -> headerIndexes.stream()
-                        .map(index -> index < row.size() ? row.get(index) : "")
-                        .collect(Collectors.toList()))
-                .collect(Collectors.toList());
 
-        String tableName = filePath.getFileName().toString().replaceFirst("\\.[^.]+$", "");
-        return new TableData(tableName, headers, rows);
+        Runnable task = () -> {
+            try {
+                String importedTable = tableInfoService.importCsvFile(
+                        file.toPath(),
+                        progress -> Platform.runLater(() -> statisticTitle.setText(
+                                "Загрузка CSV: " + Math.round(progress * 100) + "%"))
+                );
+                Platform.runLater(() -> {
+                    statisticTitle.setText("");
+                    refreshTables();
+                    selectTableTab(importedTable);
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    statisticTitle.setText("");
+                    showError("Не удалось загрузить CSV: " + e.getMessage());
+                });
+            }
+        };
+        Thread thread = new Thread(task);
+        thread.start();
     }
 
     private void showError(String message) {
@@ -812,6 +823,11 @@ public class MainScene {
                     Double.parseDouble(proportionGlobal.getText())
             );
         }
+        for (CheckBox metric : List.of(KAnonymity, DistinctLDiversity, EntropyLDiversity, TCloseness)) {
+            if (metric.isSelected()) {
+                statisticService.setRisk(metric.getText(), 0);
+            }
+        }
         Runnable task = () -> {
             Platform.runLater(() -> maskingView.configView("Обезличивание"));
             String time = depersonalizationService.start();
@@ -851,6 +867,20 @@ public class MainScene {
                                 .append("\n");
                     }
 
+                    if (dto.getRiskHistory() != null && !dto.getRiskHistory().isEmpty()) {
+                        statistic.append("\nРиск по шагам:\n");
+                        for (RiskStepDto step : dto.getRiskHistory()) {
+                            statistic.append(step.getStep()).append(": k = ").append(step.getK());
+                            for (RiskDto risk : step.getRisk()) {
+                                statistic.append(", ")
+                                        .append(risk.getName())
+                                        .append(" = ")
+                                        .append(risk.getResult());
+                            }
+                            statistic.append("\n");
+                        }
+                    }
+
                     statisticTitle.setText("Статистика по обезличиванию");
 
                     if (statistic.isEmpty()) {
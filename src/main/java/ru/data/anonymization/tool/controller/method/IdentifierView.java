@@ -45,6 +45,9 @@ public class IdentifierView {
     @FXML
     private TextField tableName;
 
+    @FXML
+    private TextField key;
+
     @FXML
     private HBox buttonContainer;
 
@@ -73,6 +76,7 @@ public class IdentifierView {
             customName.setText(name);
 
             Identifier dto = (Identifier) depersonalizationService.getMethod(name);
+            key.setText(dto.getKey());
 
             List<String> selectedElement = dto.getColumn();
             columnList.removeAll(selectedElement);
@@ -138,6 +142,7 @@ public class IdentifierView {
             Identifier dto = new Identifier();
             dto.setNameTable(table);
             dto.setNamesColumn(columns);
+            dto.setKey(key.getText().isBlank() ? null : key.getText());
             if (mode.equals(ShowMode.EDIT)
                 || !depersonalizationService.isContainsKey(customName.getText())) {
                 String name = customName.getText().length() < MAX_LENGTH ? customName.getText()
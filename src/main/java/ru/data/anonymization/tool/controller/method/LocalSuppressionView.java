@@ -62,6 +62,8 @@ public class LocalSuppressionView {
     private HBox replacementValueContainer;
     @FXML
     private TextField replacementValueField;
+    @FXML
+    private TextField threshold;
 
     public void configView(String title, String table, ShowMode mode, String name, VBox vBox) throws
             IOException {
@@ -84,11 +86,11 @@ public class LocalSuppressionView {
             return null;
         };
 
-        //        kValue.setTextFormatter(new TextFormatter<>(
-        //                new IntegerStringConverter(),
-        //                1,
-        //                integerFilter
-        //        ));
+        threshold.setTextFormatter(new TextFormatter<>(
+                new IntegerStringConverter(),
+                2,
+                integerFilter
+        ));
 
         List<String> columnList = tableInfoService.getColumnNames(table);
 
@@ -119,6 +121,7 @@ public class LocalSuppressionView {
 
             // Установка выбранных значений n, k, replacementValue из dto, если они есть
             nChoiceBox.setValue(String.valueOf(dto.getN()));
+            threshold.setText(String.valueOf(Math.max(dto.getThreshold(), 2)));
 
             if (dto.getN() == 3) {
                 kContainer.setVisible(true);
@@ -215,6 +218,7 @@ public class LocalSuppressionView {
 
             int k = kChoiceBox.getValue() != null ? Integer.parseInt(kChoiceBox.getValue()) : -1;
             dto.setK(k);
+            dto.setThreshold(threshold.getText().isEmpty() ? 2 : Math.max(Integer.parseInt(threshold.getText()), 2));
             String replacementValue = replacementValueField.getText();
             if (replacementValue != null) {
                 dto.setReplacementValue(replacementValue);
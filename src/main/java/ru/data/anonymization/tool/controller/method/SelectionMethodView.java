@@ -1,11 +1,13 @@
 package ru.data.anonymization.tool.controller.method;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.function.UnaryOperator;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextFormatter;
 import javafx.scene.control.TextFormatter.Change;
@@ -18,7 +20,6 @@ import org.springframework.stereotype.Component;
 import ru.data.anonymization.tool.builder.DialogBuilder;
 import ru.data.anonymization.tool.dto.enums.ShowMode;
 import ru.data.anonymization.tool.methods.options.type.SelectionMethod;
-import ru.data.anonymization.tool.methods.options.type.ValueVariance;
 import ru.data.anonymization.tool.service.DepersonalizationService;
 import ru.data.anonymization.tool.util.ComponentUtils;
 
@@ -30,8 +31,15 @@ public class SelectionMethodView {
 
     private final DepersonalizationService depersonalizationService;
 
+    // Названия в порядке SelectionMethod.Sampling.values()
+    private static final List<String> SAMPLINGS = List.of("Случайная", "Стратифицированная", "TABLESAMPLE (приближённая)");
+
     @FXML
     private TextField variance;
+    @FXML
+    private ComboBox<String> sampling;
+    @FXML
+    private TextField seed;
 
     @FXML
     private TextField customName;
@@ -74,6 +82,9 @@ public class SelectionMethodView {
                 1,
                 integerFilter
         ));
+        seed.setTextFormatter(new TextFormatter<>(change -> change.getControlNewText().matches("-?\\d{0,18}") ? change : null));
+        sampling.getItems().addAll(SAMPLINGS);
+        sampling.setValue(SAMPLINGS.get(0));
 
         Button saveButton = new Button("Сохранить");
         saveButton.setStyle("-fx-background-color: #4bbd50; -fx-text-fill: white;");
@@ -84,8 +95,14 @@ public class SelectionMethodView {
             customName.setDisable(true);
             customName.setText(name);
 
-            int value = ((ValueVariance) depersonalizationService.getMethod(name)).getSigma();
-            variance.setText(String.valueOf(value));
+            SelectionMethod dto = (SelectionMethod) depersonalizationService.getMethod(name);
+            variance.setText(String.valueOf(dto.getPercent()));
+            if (dto.getSampling() != null) {
+                sampling.setValue(SAMPLINGS.get(dto.getSampling().ordinal()));
+            }
+            if (dto.getSeed() != null) {
+                seed.setText(String.valueOf(dto.getSeed()));
+            }
 
             Button deleteButton = new Button("Удалить");
             deleteButton.setStyle("-fx-background-color: #e83434; -fx-text-fill: white;");
@@ -112,6 +129,9 @@ public class SelectionMethodView {
                 dto.setNameColumn(column);
                 dto.setPercent(Integer.parseInt(variance.getText()));
             }
+            dto.setSampling(SelectionMethod.Sampling.values()[SAMPLINGS.indexOf(sampling.getValue())]);
+            String seedText = seed.getText();
+            dto.setSeed(seedText == null || seedText.isBlank() || seedText.equals("-") ? null : Long.parseLong(seedText));
 
             if (mode.equals(ShowMode.EDIT)
                 || !depersonalizationService.isContainsKey(customName.getText())) {
@@ -4,6 +4,7 @@ import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Node;
 import javafx.scene.control.Button;
+import javafx.scene.control.ComboBox;
 import javafx.scene.control.TextField;
 import javafx.scene.control.TextFormatter;
 import javafx.scene.layout.HBox;
@@ -12,6 +13,7 @@ import javafx.stage.Stage;
 import javafx.util.converter.IntegerStringConverter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
+import ru.data.anonymization.tool.methods.options.NoiseGenerator;
 import ru.data.anonymization.tool.methods.options.type.ValueVariance;
 import ru.data.anonymization.tool.builder.DialogBuilder;
 import ru.data.anonymization.tool.dto.enums.ShowMode;
@@ -19,6 +21,7 @@ import ru.data.anonymization.tool.service.DepersonalizationService;
 import ru.data.anonymization.tool.util.ComponentUtils;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.Locale;
 import java.util.function.UnaryOperator;
 
@@ -26,11 +29,17 @@ import java.util.function.UnaryOperator;
 @RequiredArgsConstructor
 public class ValueVarianceView {
     private static final int MAX_LENGTH = 40;
+    // Названия в порядке NoiseGenerator.Distribution.values()
+    private static final List<String> DISTRIBUTIONS = List.of("Нормальное", "Лапласа", "Равномерное");
 
     private final DepersonalizationService depersonalizationService;
 
     @FXML
     private TextField variance;
+    @FXML
+    private ComboBox<String> distribution;
+    @FXML
+    private TextField seed;
 
     @FXML
     private TextField customName;
@@ -58,6 +67,9 @@ public class ValueVarianceView {
             return null;
         };
         variance.setTextFormatter(new TextFormatter<>(new IntegerStringConverter(), 1, integerFilter));
+        seed.setTextFormatter(new TextFormatter<>(change -> change.getControlNewText().matches("-?\\d{0,18}") ? change : null));
+        distribution.getItems().addAll(DISTRIBUTIONS);
+        distribution.setValue(DISTRIBUTIONS.get(0));
 
         Button saveButton = new Button("Сохранить");
         saveButton.setStyle("-fx-background-color: #4bbd50; -fx-text-fill: white;");
@@ -68,8 +80,14 @@ public class ValueVarianceView {
             customName.setDisable(true);
             customName.setText(name);
 
-            int value = ((ValueVariance) depersonalizationService.getMethod(name)).getSigma();
-            variance.setText(String.valueOf(value));
+            ValueVariance dto = (ValueVariance) depersonalizationService.getMethod(name);
+            variance.setText(String.valueOf(dto.getSigma()));
+            if (dto.getDistribution() != null) {
+                distribution.setValue(DISTRIBUTIONS.get(dto.getDistribution().ordinal()));
+            }
+            if (dto.getSeed() != null) {
+                seed.setText(String.valueOf(dto.getSeed()));
+            }
 
 
             Button deleteButton = new Button("Удалить");
@@ -98,6 +116,9 @@ public class ValueVarianceView {
                 dto.setSigma(Integer.parseInt(variance.getText()));
                 dto.setDataType(ValueVariance.DataType.valueOf(dataType.toUpperCase(Locale.ROOT)));
             }
+            dto.setDistribution(NoiseGenerator.Distribution.values()[DISTRIBUTIONS.indexOf(distribution.getValue())]);
+            String seedText = seed.getText();
+            dto.setSeed(seedText == null || seedText.isBlank() || seedText.equals("-") ? null : Long.parseLong(seedText));
 
 
             if (mode.equals(ShowMode.EDIT) || !depersonalizationService.isContainsKey(customName.getText())) {
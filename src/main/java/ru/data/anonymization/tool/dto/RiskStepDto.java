@@ -0,0 +1,12 @@
+package ru.data.anonymization.tool.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class RiskStepDto {
+    private String step;
+    private int k;
+    private List<RiskDto> risk;
+}
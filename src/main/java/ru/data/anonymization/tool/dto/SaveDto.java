@@ -5,11 +5,12 @@ import ru.data.anonymization.tool.methods.options.MaskItem;
 
 import java.io.Serializable;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 @Data
 public class SaveDto implements Serializable {
     private Map<String, DataPreparationDto> preparationMap = new HashMap<>();
-    private Map<String, MaskItem> methodsMap = new HashMap<>();
+    private Map<String, MaskItem> methodsMap = new LinkedHashMap<>();
     private Map<String, SyntheticConfigDto> syntheticConfigMap = new HashMap<>();
 }
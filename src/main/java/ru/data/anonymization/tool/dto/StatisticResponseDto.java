@@ -17,4 +17,5 @@ public class StatisticResponseDto {
     private BigDecimal MD;
     private BigDecimal Shannon;
     private List<RiskDto> risk;
+    private List<RiskStepDto> riskHistory;
 }
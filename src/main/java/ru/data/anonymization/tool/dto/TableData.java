@@ -1,21 +1,52 @@
 package ru.data.anonymization.tool.dto;
 
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.ColumnBuilder;
+
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
 /**
  * Простая модель таблицы для хранения данных из CSV файлов.
+ * Данные хранятся по столбцам; выборка строк задаётся массивом индексов без копирования значений.
  */
 public class TableData {
     private final String name;
     private final List<String> columnNames = new ArrayList<>();
-    private final List<List<String>> rows = new ArrayList<>();
+    private final List<Column> columns = new ArrayList<>();
+    // Индексы строк исходных столбцов, null - все строки по порядку
+    private final int[] rowIndex;
+    private final int rowCount;
 
     public TableData(String name, List<String> columnNames, List<List<String>> rows) {
+        this(name, columnNames, buildColumns(columnNames, rows), null, rows.size());
+    }
+
+    private TableData(String name, List<String> columnNames, List<Column> columns, int[] rowIndex, int rowCount) {
         this.name = name;
         this.columnNames.addAll(columnNames);
-        this.rows.addAll(rows);
+        this.columns.addAll(columns);
+        this.rowIndex = rowIndex;
+        this.rowCount = rowCount;
+    }
+
+    private static List<Column> buildColumns(List<String> columnNames, List<List<String>> rows) {
+        Builder builder = new Builder(null, columnNames);
+        rows.forEach(builder::addRow);
+        return builder.build().columns;
+    }
+
+    // Таблица из готовых столбцов одинаковой длины
+    public static TableData ofColumns(String name, List<String> columnNames, List<Column> columns) {
+        int rowCount = columns.isEmpty() ? 0 : columns.get(0).size();
+        return new TableData(name, columnNames, columns, null, rowCount);
+    }
+
+    public static Builder builder(String name, List<String> columnNames) {
+        return new Builder(name, columnNames);
     }
 
     public String getName() {
@@ -26,7 +57,138 @@ public class TableData {
         return Collections.unmodifiableList(columnNames);
     }
 
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public Column getColumn(int column) {
+        return columns.get(column);
+    }
+
+    // Индекс строки в исходном столбце для строки row этой таблицы
+    public int getRowIndex(int row) {
+        return rowIndex == null ? row : rowIndex[row];
+    }
+
+    public String getValue(int row, int column) {
+        return columns.get(column).getString(getRowIndex(row));
+    }
+
+    public List<String> getRow(int row) {
+        int sourceRow = getRowIndex(row);
+        return new AbstractList<>() {
+            @Override
+            public String get(int column) {
+                return columns.get(column).getString(sourceRow);
+            }
+
+            @Override
+            public int size() {
+                return columns.size();
+            }
+        };
+    }
+
     public List<List<String>> getRows() {
-        return Collections.unmodifiableList(rows);
+        return new AbstractList<>() {
+            @Override
+            public List<String> get(int row) {
+                return getRow(row);
+            }
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+
+    // Представление выбранных строк (индексы строк этой таблицы) без копирования данных
+    public TableData select(int[] rows) {
+        int[] index = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            index[i] = getRowIndex(rows[i]);
+        }
+        return new TableData(name, columnNames, columns, index, index.length);
+    }
+
+    public TableData withName(String name) {
+        return new TableData(name, columnNames, columns, rowIndex, rowCount);
+    }
+
+    public int getColumnIndex(String columnName) {
+        return columnNames.indexOf(columnName);
+    }
+
+    // Таблица без представления строк: выбранные строки копируются в новые столбцы
+    public TableData compact() {
+        if (rowIndex == null) {
+            return this;
+        }
+        List<Column> selected = new ArrayList<>();
+        columns.forEach(column -> selected.add(column.select(rowIndex)));
+        return new TableData(name, columnNames, selected, null, rowCount);
+    }
+
+    // Заменяет или добавляет столбец; column содержит строки этой таблицы по порядку
+    public TableData withColumn(String columnName, Column column) {
+        TableData table = compact();
+        List<String> names = new ArrayList<>(table.columnNames);
+        List<Column> newColumns = new ArrayList<>(table.columns);
+        int index = names.indexOf(columnName);
+        if (index < 0) {
+            names.add(columnName);
+            newColumns.add(column);
+        } else {
+            newColumns.set(index, column);
+        }
+        return new TableData(name, names, newColumns, null, rowCount);
+    }
+
+    public TableData withoutColumns(Collection<String> removed) {
+        List<String> names = new ArrayList<>();
+        List<Column> newColumns = new ArrayList<>();
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (!removed.contains(columnNames.get(i))) {
+                names.add(columnNames.get(i));
+                newColumns.add(columns.get(i));
+            }
+        }
+        return new TableData(name, names, newColumns, rowIndex, rowCount);
+    }
+
+    public static class Builder {
+        private final String name;
+        private final List<String> columnNames;
+        private final List<ColumnBuilder> columns = new ArrayList<>();
+        private int rowCount;
+
+        private Builder(String name, List<String> columnNames) {
+            this.name = name;
+            this.columnNames = new ArrayList<>(columnNames);
+            columnNames.forEach(column -> columns.add(new ColumnBuilder()));
+        }
+
+        public Builder addRow(List<String> row) {
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).add(i < row.size() ? row.get(i) : null);
+            }
+            rowCount++;
+            return this;
+        }
+
+        public Builder addRow(String[] row) {
+            for (int i = 0; i < columns.size(); i++) {
+                columns.get(i).add(i < row.length ? row[i] : null);
+            }
+            rowCount++;
+            return this;
+        }
+
+        public TableData build() {
+            List<Column> built = new ArrayList<>();
+            columns.forEach(column -> built.add(column.build()));
+            return new TableData(name, columnNames, built, null, rowCount);
+        }
     }
 }
@@ -0,0 +1,54 @@
+package ru.data.anonymization.tool.dto.column;
+
+import java.util.BitSet;
+
+/**
+ * Столбец таблицы в памяти. Значения хранятся в примитивных массивах, NULL отмечаются в битовой маске.
+ */
+public abstract class Column {
+
+    protected final BitSet nulls;
+    protected final int size;
+
+    protected Column(BitSet nulls, int size) {
+        this.nulls = nulls;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isNull(int row) {
+        return nulls.get(row);
+    }
+
+    public BitSet copyNulls() {
+        return (BitSet) nulls.clone();
+    }
+
+    // Значение в том же текстовом виде, в котором оно было загружено
+    public String getString(int row) {
+        return isNull(row) ? null : format(row);
+    }
+
+    // Числовое значение строки; у нечисловых столбцов разбирается из текста
+    public double getDouble(int row) {
+        return Double.parseDouble(format(row).trim().replace(',', '.'));
+    }
+
+    // Новый столбец из строк с указанными индексами
+    public abstract Column select(int[] rows);
+
+    protected abstract String format(int row);
+
+    protected BitSet selectNulls(int[] rows) {
+        BitSet selected = new BitSet(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            if (nulls.get(rows[i])) {
+                selected.set(i);
+            }
+        }
+        return selected;
+    }
+}
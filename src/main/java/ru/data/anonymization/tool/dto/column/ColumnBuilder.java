@@ -0,0 +1,141 @@
+package ru.data.anonymization.tool.dto.column;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Построчное заполнение столбца. Значения сначала кодируются словарём, при сборке столбец
+ * переводится в числовой или дату, только если каждое значение восстанавливается из него в точности.
+ */
+public class ColumnBuilder {
+
+    private final Map<String, Integer> codeByValue = new HashMap<>();
+    private final List<String> dictionary = new ArrayList<>();
+    private final BitSet nulls = new BitSet();
+    private int[] codes = new int[1024];
+    private int size;
+
+    public void add(String value) {
+        if (size == codes.length) {
+            codes = Arrays.copyOf(codes, size * 2);
+        }
+        if (value == null) {
+            nulls.set(size);
+        } else {
+            Integer code = codeByValue.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                codeByValue.put(value, code);
+            }
+            codes[size] = code;
+        }
+        size++;
+    }
+
+    public Column build() {
+        int[] rowCodes = Arrays.copyOf(codes, size);
+        Column column = toIntColumn(rowCodes);
+        if (column == null) {
+            column = toLongColumn(rowCodes);
+        }
+        if (column == null) {
+            column = toDoubleColumn(rowCodes);
+        }
+        if (column == null) {
+            column = toDateColumn(rowCodes);
+        }
+        if (column == null) {
+            column = new StringColumn(List.copyOf(dictionary), rowCodes, nulls, size);
+        }
+        return column;
+    }
+
+    private Column toIntColumn(int[] rowCodes) {
+        int[] parsed = new int[dictionary.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            String value = dictionary.get(i);
+            try {
+                parsed[i] = Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (!Integer.toString(parsed[i]).equals(value)) {
+                return null;
+            }
+        }
+        int[] values = new int[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = nulls.get(row) ? 0 : parsed[rowCodes[row]];
+        }
+        return new IntColumn(values, nulls, size);
+    }
+
+    private Column toLongColumn(int[] rowCodes) {
+        long[] parsed = new long[dictionary.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            String value = dictionary.get(i);
+            try {
+                parsed[i] = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (!Long.toString(parsed[i]).equals(value)) {
+                return null;
+            }
+        }
+        long[] values = new long[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = nulls.get(row) ? 0 : parsed[rowCodes[row]];
+        }
+        return new LongColumn(values, nulls, size);
+    }
+
+    private Column toDoubleColumn(int[] rowCodes) {
+        double[] parsed = new double[dictionary.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            String value = dictionary.get(i);
+            try {
+                parsed[i] = Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (!Double.toString(parsed[i]).equals(value)) {
+                return null;
+            }
+        }
+        double[] values = new double[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = nulls.get(row) ? 0 : parsed[rowCodes[row]];
+        }
+        return new DoubleColumn(values, nulls, size);
+    }
+
+    private Column toDateColumn(int[] rowCodes) {
+        int[] parsed = new int[dictionary.size()];
+        for (int i = 0; i < parsed.length; i++) {
+            String value = dictionary.get(i);
+            LocalDate date;
+            try {
+                date = LocalDate.parse(value);
+            } catch (DateTimeParseException e) {
+                return null;
+            }
+            if (!date.toString().equals(value)) {
+                return null;
+            }
+            parsed[i] = (int) date.toEpochDay();
+        }
+        int[] values = new int[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = nulls.get(row) ? 0 : parsed[rowCodes[row]];
+        }
+        return new DateColumn(values, nulls, size);
+    }
+}
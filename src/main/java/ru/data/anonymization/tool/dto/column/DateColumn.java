@@ -0,0 +1,45 @@
+package ru.data.anonymization.tool.dto.column;
+
+import java.time.LocalDate;
+import java.util.BitSet;
+
+/**
+ * Даты хранятся как число дней от 1970-01-01.
+ */
+public class DateColumn extends Column {
+
+    private final int[] epochDays;
+
+    public DateColumn(int[] epochDays, BitSet nulls, int size) {
+        super(nulls, size);
+        this.epochDays = epochDays;
+    }
+
+    public int getEpochDay(int row) {
+        return epochDays[row];
+    }
+
+    // Число дней от 1970-01-01, чтобы даты можно было упорядочивать и усреднять как числа
+    @Override
+    public double getDouble(int row) {
+        return epochDays[row];
+    }
+
+    public LocalDate getDate(int row) {
+        return isNull(row) ? null : LocalDate.ofEpochDay(epochDays[row]);
+    }
+
+    @Override
+    public DateColumn select(int[] rows) {
+        int[] selected = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            selected[i] = epochDays[rows[i]];
+        }
+        return new DateColumn(selected, selectNulls(rows), rows.length);
+    }
+
+    @Override
+    protected String format(int row) {
+        return LocalDate.ofEpochDay(epochDays[row]).toString();
+    }
+}
@@ -0,0 +1,32 @@
+package ru.data.anonymization.tool.dto.column;
+
+import java.util.BitSet;
+
+public class DoubleColumn extends Column {
+
+    private final double[] values;
+
+    public DoubleColumn(double[] values, BitSet nulls, int size) {
+        super(nulls, size);
+        this.values = values;
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    @Override
+    public DoubleColumn select(int[] rows) {
+        double[] selected = new double[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            selected[i] = values[rows[i]];
+        }
+        return new DoubleColumn(selected, selectNulls(rows), rows.length);
+    }
+
+    @Override
+    protected String format(int row) {
+        return Double.toString(values[row]);
+    }
+}
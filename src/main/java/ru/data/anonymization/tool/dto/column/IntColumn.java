@@ -0,0 +1,36 @@
+package ru.data.anonymization.tool.dto.column;
+
+import java.util.BitSet;
+
+public class IntColumn extends Column {
+
+    private final int[] values;
+
+    public IntColumn(int[] values, BitSet nulls, int size) {
+        super(nulls, size);
+        this.values = values;
+    }
+
+    public int getInt(int row) {
+        return values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    @Override
+    public IntColumn select(int[] rows) {
+        int[] selected = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            selected[i] = values[rows[i]];
+        }
+        return new IntColumn(selected, selectNulls(rows), rows.length);
+    }
+
+    @Override
+    protected String format(int row) {
+        return Integer.toString(values[row]);
+    }
+}
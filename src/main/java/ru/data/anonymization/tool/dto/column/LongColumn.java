@@ -0,0 +1,36 @@
+package ru.data.anonymization.tool.dto.column;
+
+import java.util.BitSet;
+
+public class LongColumn extends Column {
+
+    private final long[] values;
+
+    public LongColumn(long[] values, BitSet nulls, int size) {
+        super(nulls, size);
+        this.values = values;
+    }
+
+    public long getLong(int row) {
+        return values[row];
+    }
+
+    @Override
+    public double getDouble(int row) {
+        return values[row];
+    }
+
+    @Override
+    public LongColumn select(int[] rows) {
+        long[] selected = new long[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            selected[i] = values[rows[i]];
+        }
+        return new LongColumn(selected, selectNulls(rows), rows.length);
+    }
+
+    @Override
+    protected String format(int row) {
+        return Long.toString(values[row]);
+    }
+}
@@ -0,0 +1,46 @@
+package ru.data.anonymization.tool.dto.column;
+
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Строковый столбец со словарным кодированием: каждое уникальное значение хранится один раз.
+ */
+public class StringColumn extends Column {
+
+    private final List<String> dictionary;
+    private final int[] codes;
+
+    public StringColumn(List<String> dictionary, int[] codes, BitSet nulls, int size) {
+        super(nulls, size);
+        this.dictionary = dictionary;
+        this.codes = codes;
+    }
+
+    public int getCode(int row) {
+        return codes[row];
+    }
+
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    // Тот же столбец с другим словарём: значения заменяются для всех строк с одинаковым кодом
+    public StringColumn withDictionary(List<String> newDictionary) {
+        return new StringColumn(newDictionary, codes, nulls, size);
+    }
+
+    @Override
+    public StringColumn select(int[] rows) {
+        int[] selected = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            selected[i] = codes[rows[i]];
+        }
+        return new StringColumn(dictionary, selected, selectNulls(rows), rows.length);
+    }
+
+    @Override
+    protected String format(int row) {
+        return dictionary.get(codes[row]);
+    }
+}
@@ -7,15 +7,22 @@ import java.util.Map;
 
 @Getter
 public enum RiskEnum {
-    PROSECUTOR_METRIC_A("ProsecutorMetricA"),
-    PROSECUTOR_METRIC_B("ProsecutorMetricB"),
-    PROSECUTOR_METRIC_C("ProsecutorMetricC"),
-    GLOBAL_RISK("GlobalRisk");
+    PROSECUTOR_METRIC_A("ProsecutorMetricA", false),
+    PROSECUTOR_METRIC_B("ProsecutorMetricB", false),
+    PROSECUTOR_METRIC_C("ProsecutorMetricC", false),
+    GLOBAL_RISK("GlobalRisk", false),
+    K_ANONYMITY("KAnonymity", false),
+    DISTINCT_L_DIVERSITY("DistinctLDiversity", true),
+    ENTROPY_L_DIVERSITY("EntropyLDiversity", true),
+    T_CLOSENESS("TCloseness", true);
 
     final String name;
+    // Метрика считается по чувствительным атрибутам, а не только по размерам классов
+    final boolean sensitive;
 
-    RiskEnum(String name) {
+    RiskEnum(String name, boolean sensitive) {
         this.name = name;
+        this.sensitive = sensitive;
     }
 
     private static final Map<String,RiskEnum> map;
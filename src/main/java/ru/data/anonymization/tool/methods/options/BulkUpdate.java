@@ -0,0 +1,94 @@
+package ru.data.anonymization.tool.methods.options;
+
+import ru.data.anonymization.tool.service.DatabaseConnectionService;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Массовое обновление столбцов таблицы: новые значения по ключу строки загружаются
+ * через COPY во временную таблицу и применяются одним UPDATE ... FROM.
+ */
+public class BulkUpdate {
+
+    private final DatabaseConnectionService controllerDB;
+    private final String nameTable;
+    private final String keyColumn;
+    private final String tempTable;
+    private final List<String> columns = new ArrayList<>();
+    private final List<String> types = new ArrayList<>();
+    private CopyBuffer buffer;
+
+    public BulkUpdate(DatabaseConnectionService controllerDB, String nameTable, String keyColumn) {
+        this.controllerDB = controllerDB;
+        this.nameTable = nameTable;
+        this.keyColumn = keyColumn;
+        this.tempTable = "bulk_update_" + nameTable;
+    }
+
+    // Значения загружаются с типом исходного столбца
+    public BulkUpdate column(String name) {
+        return column(name, null);
+    }
+
+    // Значения загружаются с указанным типом и приводятся к типу столбца при обновлении
+    public BulkUpdate column(String name, String type) {
+        columns.add(name);
+        types.add(type);
+        return this;
+    }
+
+    public void add(Object key, Object... values) throws SQLException {
+        if (buffer == null) {
+            open();
+        }
+        Object[] row = new Object[values.length + 1];
+        row[0] = key;
+        System.arraycopy(values, 0, row, 1, values.length);
+        buffer.add(row);
+    }
+
+    public long apply() throws SQLException {
+        if (buffer == null) {
+            return 0;
+        }
+        long rowCount = buffer.finish();
+
+        StringBuilder assignments = new StringBuilder();
+        for (String column : columns) {
+            if (!assignments.isEmpty()) {
+                assignments.append(", ");
+            }
+            assignments.append(column).append(" = b.").append(column);
+        }
+
+        controllerDB.execute("ANALYZE " + tempTable + ";");
+        controllerDB.execute("UPDATE " + nameTable + " SET " + assignments + " FROM " + tempTable + " b WHERE "
+                             + nameTable + "." + keyColumn + " = b." + keyColumn + ";");
+        controllerDB.execute("DROP TABLE " + tempTable + ";");
+        buffer = null;
+        return rowCount;
+    }
+
+    private void open() throws SQLException {
+        StringBuilder select = new StringBuilder(keyColumn);
+        for (int i = 0; i < columns.size(); i++) {
+            select.append(", ");
+            if (types.get(i) == null) {
+                select.append(columns.get(i));
+            } else {
+                select.append("NULL::").append(types.get(i)).append(" AS ").append(columns.get(i));
+            }
+        }
+
+        controllerDB.execute("DROP TABLE IF EXISTS " + tempTable + ";");
+        controllerDB.execute("CREATE TEMP TABLE " + tempTable + " AS SELECT " + select + " FROM " + nameTable
+                             + " WITH NO DATA;");
+
+        List<String> copyColumns = new ArrayList<>();
+        copyColumns.add(keyColumn);
+        copyColumns.addAll(columns);
+        buffer = new CopyBuffer(controllerDB, tempTable, copyColumns);
+    }
+}
@@ -0,0 +1,89 @@
+package ru.data.anonymization.tool.methods.options;
+
+import ru.data.anonymization.tool.service.DatabaseConnectionService;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Накопитель строк для COPY ... FROM STDIN в текстовом формате PostgreSQL.
+ * Данные отправляются порциями, поэтому объём памяти не зависит от числа строк.
+ */
+public class CopyBuffer {
+
+    private static final int FLUSH_SIZE = 1 << 20;
+
+    private final DatabaseConnectionService controllerDB;
+    private final String copySql;
+    private final StringBuilder buffer = new StringBuilder();
+    private long rowCount;
+
+    public CopyBuffer(DatabaseConnectionService controllerDB, String nameTable, List<String> columns) {
+        this.controllerDB = controllerDB;
+        this.copySql = "COPY " + nameTable + " (" + String.join(", ", columns) + ") FROM STDIN";
+    }
+
+    public void add(Object... values) throws SQLException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                buffer.append('\t');
+            }
+            appendValue(values[i]);
+        }
+        buffer.append('\n');
+        rowCount++;
+        if (buffer.length() >= FLUSH_SIZE) {
+            flush();
+        }
+    }
+
+    public long finish() throws SQLException {
+        flush();
+        return rowCount;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    private void flush() throws SQLException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        try {
+            controllerDB.getCopyManager().copyIn(copySql, new StringReader(buffer.toString()));
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+        buffer.setLength(0);
+    }
+
+    private void appendValue(Object value) {
+        if (value == null) {
+            buffer.append("\\N");
+            return;
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double number = ((Number) value).doubleValue();
+            if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+                buffer.append((long) number);
+            } else {
+                buffer.append(number);
+            }
+            return;
+        }
+        String text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '\\' -> buffer.append("\\\\");
+                case '\t' -> buffer.append("\\t");
+                case '\n' -> buffer.append("\\n");
+                case '\r' -> buffer.append("\\r");
+                default -> buffer.append(c);
+            }
+        }
+    }
+}
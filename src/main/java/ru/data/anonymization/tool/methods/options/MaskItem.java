@@ -1,14 +1,19 @@
 package ru.data.anonymization.tool.methods.options;
 
+import ru.data.anonymization.tool.dto.TableData;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 
 public interface MaskItem extends Serializable {
 
     void start(DatabaseConnectionService controllerDB) throws Exception;
 
+    // Выполнение над таблицами в памяти (источник CSV): изменённые и созданные таблицы записываются в tables
+    void start(Map<String, TableData> tables) throws Exception;
+
     String getTable();
 
     List<String> getColumn();
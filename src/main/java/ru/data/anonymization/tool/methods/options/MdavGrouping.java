@@ -0,0 +1,181 @@
+package ru.data.anonymization.tool.methods.options;
+
+import java.util.Arrays;
+
+/**
+ * Разбиение записей на группы по алгоритму MDAV в памяти.
+ * Значения хранятся по столбцам, NaN означает NULL.
+ */
+public class MdavGrouping {
+
+    private final double[][] columns;
+    private final int k;
+    private final int[] remaining;
+    private final double[] distance;
+    private final int[] group;
+    private int left;
+    private int groupCount;
+
+    private MdavGrouping(double[][] columns, int rows, int k) {
+        this.columns = columns;
+        this.k = Math.max(k, 1);
+        this.remaining = new int[rows];
+        this.distance = new double[rows];
+        this.group = new int[rows];
+        for (int i = 0; i < rows; i++) {
+            remaining[i] = i;
+        }
+        this.left = rows;
+    }
+
+    // Возвращает номер группы для каждой записи
+    public static int[] group(double[][] columns, int rows, int k) {
+        MdavGrouping grouping = new MdavGrouping(columns, rows, k);
+        grouping.run();
+        return grouping.group;
+    }
+
+    // Средние значения групп по каждому столбцу: means[column][group]
+    public static double[][] means(double[][] columns, int[] group) {
+        int groupCount = 0;
+        for (int g : group) {
+            groupCount = Math.max(groupCount, g + 1);
+        }
+        double[][] means = new double[columns.length][groupCount];
+        int[] counts = new int[groupCount];
+        for (int c = 0; c < columns.length; c++) {
+            Arrays.fill(counts, 0);
+            for (int row = 0; row < group.length; row++) {
+                double value = columns[c][row];
+                if (!Double.isNaN(value)) {
+                    means[c][group[row]] += value;
+                    counts[group[row]]++;
+                }
+            }
+            for (int g = 0; g < groupCount; g++) {
+                means[c][g] = counts[g] == 0 ? 0 : means[c][g] / counts[g];
+            }
+        }
+        return means;
+    }
+
+    private void run() {
+        while (left >= 3 * k) {
+            double[] xr = point(farthest(centroid()));
+            double[] xs = point(farthest(xr));
+            formGroup(xr);
+            formGroup(xs);
+        }
+        if (left >= 2 * k) {
+            formGroup(point(farthest(centroid())));
+        }
+        if (left > 0) {
+            for (int i = 0; i < left; i++) {
+                group[remaining[i]] = groupCount;
+            }
+            groupCount++;
+            left = 0;
+        }
+    }
+
+    private double[] centroid() {
+        double[] centroid = new double[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            double sum = 0;
+            int count = 0;
+            for (int i = 0; i < left; i++) {
+                double value = columns[c][remaining[i]];
+                if (!Double.isNaN(value)) {
+                    sum += value;
+                    count++;
+                }
+            }
+            centroid[c] = count == 0 ? 0 : sum / count;
+        }
+        return centroid;
+    }
+
+    private double[] point(int row) {
+        double[] point = new double[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            point[c] = valueOf(c, row);
+        }
+        return point;
+    }
+
+    private int farthest(double[] from) {
+        int result = remaining[0];
+        double max = -1;
+        for (int i = 0; i < left; i++) {
+            double d = squaredDistance(from, remaining[i]);
+            if (d > max) {
+                max = d;
+                result = remaining[i];
+            }
+        }
+        return result;
+    }
+
+    // k ближайших записей переставляются в хвост активной части массива и исключаются из рассмотрения
+    private void formGroup(double[] x) {
+        for (int i = 0; i < left; i++) {
+            distance[i] = squaredDistance(x, remaining[i]);
+        }
+        int size = Math.min(k, left);
+        selectSmallest(size);
+        for (int i = 0; i < size; i++) {
+            group[remaining[i]] = groupCount;
+            swap(i, left - 1 - i);
+        }
+        left -= size;
+        groupCount++;
+    }
+
+    // Частичная сортировка (quickselect): первые size позиций получают наименьшие расстояния
+    private void selectSmallest(int size) {
+        int from = 0;
+        int to = left - 1;
+        while (from < to) {
+            double pivot = distance[(from + to) >>> 1];
+            int i = from;
+            int j = to;
+            while (i <= j) {
+                while (distance[i] < pivot) i++;
+                while (distance[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (size - 1 <= j) {
+                to = j;
+            } else if (size - 1 >= i) {
+                from = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        int row = remaining[i];
+        remaining[i] = remaining[j];
+        remaining[j] = row;
+        double d = distance[i];
+        distance[i] = distance[j];
+        distance[j] = d;
+    }
+
+    private double squaredDistance(double[] x, int row) {
+        double sum = 0;
+        for (int c = 0; c < columns.length; c++) {
+            double diff = x[c] - valueOf(c, row);
+            sum += diff * diff;
+        }
+        return sum;
+    }
+
+    private double valueOf(int column, int row) {
+        double value = columns[column][row];
+        return Double.isNaN(value) ? 0 : value;
+    }
+}
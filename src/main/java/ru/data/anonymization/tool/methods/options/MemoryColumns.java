@@ -0,0 +1,121 @@
+package ru.data.anonymization.tool.methods.options;
+
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.ColumnBuilder;
+import ru.data.anonymization.tool.dto.column.DateColumn;
+import ru.data.anonymization.tool.dto.column.StringColumn;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.UnaryOperator;
+
+/**
+ * Общие операции методов обезличивания над таблицами в памяти (источник CSV).
+ */
+public final class MemoryColumns {
+
+    // Форматы дат, которые распознаются в CSV (см. TableInfoService.isDateValue)
+    private static final List<DateTimeFormatter> DATE_FORMATS = List.of(
+            DateTimeFormatter.ISO_LOCAL_DATE,
+            DateTimeFormatter.ofPattern("dd.MM.yyyy"),
+            DateTimeFormatter.ofPattern("MM/dd/yyyy"),
+            DateTimeFormatter.ofPattern("yyyy/MM/dd")
+    );
+
+    private MemoryColumns() {
+    }
+
+    // Таблица без представления строк; она же сохраняется обратно в tables
+    public static TableData table(Map<String, TableData> tables, String name) {
+        TableData table = tables.get(name);
+        if (table == null) {
+            throw new IllegalArgumentException("Таблица не найдена: " + name);
+        }
+        TableData compact = table.compact();
+        tables.put(name, compact);
+        return compact;
+    }
+
+    public static Column column(TableData table, String name) {
+        int index = table.getColumnIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("Столбец не найден: " + table.getName() + "." + name);
+        }
+        return table.getColumn(index);
+    }
+
+    // Преобразование непустых значений; у словарного столбца преобразуется только словарь
+    public static Column mapStrings(Column column, UnaryOperator<String> mapper) {
+        if (column instanceof StringColumn strings) {
+            List<String> dictionary = new ArrayList<>(strings.getDictionary().size());
+            strings.getDictionary().forEach(value -> dictionary.add(mapper.apply(value)));
+            return strings.withDictionary(dictionary);
+        }
+        ColumnBuilder builder = new ColumnBuilder();
+        for (int row = 0; row < column.size(); row++) {
+            builder.add(column.isNull(row) ? null : mapper.apply(column.getString(row)));
+        }
+        return builder.build();
+    }
+
+    // Преобразование дат с сохранением исходного формата; нераспознанные значения не меняются
+    public static Column mapDates(Column column, UnaryOperator<LocalDate> mapper) {
+        return mapDateRows(column, (row, date) -> mapper.apply(date), true);
+    }
+
+    // Построчное преобразование дат, когда результат зависит не только от значения (например, шум)
+    public static Column mapDateRows(Column column, BiFunction<Integer, LocalDate, LocalDate> mapper) {
+        return mapDateRows(column, mapper, false);
+    }
+
+    private static Column mapDateRows(Column column, BiFunction<Integer, LocalDate, LocalDate> mapper,
+                                      boolean byValue) {
+        if (column instanceof DateColumn dates) {
+            int[] epochDays = new int[dates.size()];
+            for (int row = 0; row < dates.size(); row++) {
+                if (!dates.isNull(row)) {
+                    epochDays[row] = (int) mapper.apply(row, dates.getDate(row)).toEpochDay();
+                }
+            }
+            return new DateColumn(epochDays, dates.copyNulls(), dates.size());
+        }
+        if (byValue) {
+            return mapStrings(column, value -> mapDateText(value, date -> mapper.apply(-1, date)));
+        }
+        ColumnBuilder builder = new ColumnBuilder();
+        for (int row = 0; row < column.size(); row++) {
+            int current = row;
+            builder.add(column.isNull(row)
+                                ? null
+                                : mapDateText(column.getString(row), date -> mapper.apply(current, date)));
+        }
+        return builder.build();
+    }
+
+    private static String mapDateText(String value, UnaryOperator<LocalDate> mapper) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return mapper.apply(LocalDate.parse(value.trim(), format)).format(format);
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+        return value;
+    }
+
+    // Дата из текста в одном из распознаваемых форматов; null, если формат не подошёл
+    public static LocalDate parseDate(String value) {
+        for (DateTimeFormatter format : DATE_FORMATS) {
+            try {
+                return LocalDate.parse(value.trim(), format);
+            } catch (DateTimeParseException ignored) {
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,56 @@
+package ru.data.anonymization.tool.methods.options;
+
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Генерация шума для обезличивания. Массив заполняется блоками параллельно, у каждого блока свой
+ * генератор, полученный из зерна через split(), поэтому результат при одном зерне всегда одинаков.
+ * Параметр sigma - стандартное отклонение шума для любого распределения.
+ */
+public final class NoiseGenerator {
+
+    public enum Distribution {
+        GAUSSIAN, LAPLACE, UNIFORM
+    }
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private NoiseGenerator() {
+    }
+
+    public static double[] generate(int size, Distribution distribution, double sigma, long seed) {
+        double[] noise = new double[size];
+        int blocks = (size + BLOCK_SIZE - 1) / BLOCK_SIZE;
+        SplittableRandom root = new SplittableRandom(seed);
+        SplittableRandom[] randoms = new SplittableRandom[blocks];
+        for (int i = 0; i < blocks; i++) {
+            randoms[i] = root.split();
+        }
+
+        IntStream.range(0, blocks).parallel().forEach(block -> {
+            SplittableRandom random = randoms[block];
+            int to = Math.min(size, (block + 1) * BLOCK_SIZE);
+            for (int i = block * BLOCK_SIZE; i < to; i++) {
+                noise[i] = sample(random, distribution, sigma);
+            }
+        });
+        return noise;
+    }
+
+    private static double sample(SplittableRandom random, Distribution distribution, double sigma) {
+        return switch (distribution) {
+            case GAUSSIAN -> random.nextGaussian() * sigma;
+            case LAPLACE -> {
+                // Обратная функция распределения, масштаб b = sigma / sqrt(2)
+                double u;
+                do {
+                    u = random.nextDouble() - 0.5;
+                } while (u == -0.5);
+                yield -Math.signum(u) * Math.log(1 - 2 * Math.abs(u)) * sigma / Math.sqrt(2);
+            }
+            // Равномерное на [-a, a], a = sigma * sqrt(3)
+            case UNIFORM -> (random.nextDouble() * 2 - 1) * sigma * Math.sqrt(3);
+        };
+    }
+}
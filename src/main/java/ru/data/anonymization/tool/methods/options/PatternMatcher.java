@@ -0,0 +1,159 @@
+package ru.data.anonymization.tool.methods.options;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Поиск первого по порядку шаблона, совпадающего с частью строки (как оператор "~").
+ * Шаблоны без специальных символов ищутся одним проходом автомата Ахо-Корасик, остальные
+ * предварительно проверяются общим регулярным выражением и только затем по отдельности.
+ */
+public class PatternMatcher {
+
+    private static final String SPECIAL_CHARS = "\\^$.|?*+()[]{}";
+    // Обратные ссылки нумеруются по всему выражению, такие шаблоны нельзя объединять
+    private static final Pattern BACK_REFERENCE = Pattern.compile("\\\\(\\d|k<)");
+    // Одинаковые имена групп в разных шаблонах дают ошибку компиляции объединённого выражения
+    private static final Pattern NAMED_GROUP = Pattern.compile("\\(\\?<([a-zA-Z][a-zA-Z0-9]*)>");
+
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final List<int[]> outputs = new ArrayList<>();
+    private int[] fail;
+
+    private final int[] regexIndex;
+    private final Pattern[] regexes;
+    private final Pattern combined;
+
+    public PatternMatcher(List<String> patterns) {
+        transitions.add(new HashMap<>());
+        outputs.add(new int[0]);
+        List<Integer> regexRules = new ArrayList<>();
+        List<Pattern> compiled = new ArrayList<>();
+        StringBuilder alternation = new StringBuilder();
+        Set<String> groupNames = new HashSet<>();
+        boolean combinable = true;
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            if (isLiteral(pattern)) {
+                addLiteral(pattern, i);
+            } else {
+                regexRules.add(i);
+                compiled.add(Pattern.compile(pattern));
+                combinable &= !BACK_REFERENCE.matcher(pattern).find();
+                Matcher groups = NAMED_GROUP.matcher(pattern);
+                while (groups.find()) {
+                    combinable &= groupNames.add(groups.group(1));
+                }
+                if (!alternation.isEmpty()) {
+                    alternation.append('|');
+                }
+                alternation.append("(?:").append(pattern).append(')');
+            }
+        }
+        buildFailLinks();
+
+        regexIndex = regexRules.stream().mapToInt(Integer::intValue).toArray();
+        regexes = compiled.toArray(Pattern[]::new);
+        combined = regexes.length == 0 || !combinable ? null : Pattern.compile(alternation.toString());
+    }
+
+    // Наименьший номер шаблона не меньше from, который встречается в value; -1, если таких нет
+    public int firstMatch(String value, int from) {
+        int best = -1;
+        int state = 0;
+        for (int i = 0; i < value.length(); i++) {
+            state = next(state, value.charAt(i));
+            for (int rule : outputs.get(state)) {
+                if (rule >= from && (best < 0 || rule < best)) {
+                    best = rule;
+                }
+            }
+        }
+        if (regexes.length > 0 && (combined == null || combined.matcher(value).find())) {
+            for (int i = 0; i < regexes.length; i++) {
+                int rule = regexIndex[i];
+                if (best >= 0 && rule > best) {
+                    break;
+                }
+                if (rule >= from && regexes[i].matcher(value).find()) {
+                    return rule;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean isLiteral(String pattern) {
+        if (pattern.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
+            if (SPECIAL_CHARS.indexOf(pattern.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addLiteral(String literal, int rule) {
+        int state = 0;
+        for (int i = 0; i < literal.length(); i++) {
+            Integer target = transitions.get(state).get(literal.charAt(i));
+            if (target == null) {
+                target = transitions.size();
+                transitions.add(new HashMap<>());
+                outputs.add(new int[0]);
+                transitions.get(state).put(literal.charAt(i), target);
+            }
+            state = target;
+        }
+        int[] current = outputs.get(state);
+        int[] extended = Arrays.copyOf(current, current.length + 1);
+        extended[current.length] = rule;
+        outputs.set(state, extended);
+    }
+
+    // Обход в ширину: ссылка неудачи ведёт в самый длинный собственный суффикс, выходы суффикса наследуются
+    private void buildFailLinks() {
+        fail = new int[transitions.size()];
+        Queue<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> entry : transitions.get(state).entrySet()) {
+                int child = entry.getValue();
+                int link = next(fail[state], entry.getKey());
+                fail[child] = link;
+                int[] own = outputs.get(child);
+                int[] inherited = outputs.get(link);
+                if (inherited.length > 0) {
+                    int[] merged = Arrays.copyOf(own, own.length + inherited.length);
+                    System.arraycopy(inherited, 0, merged, own.length, inherited.length);
+                    outputs.set(child, merged);
+                }
+                queue.add(child);
+            }
+        }
+    }
+
+    private int next(int state, char symbol) {
+        while (true) {
+            Integer target = transitions.get(state).get(symbol);
+            if (target != null) {
+                return target;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+}
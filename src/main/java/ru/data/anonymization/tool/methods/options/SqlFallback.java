@@ -0,0 +1,25 @@
+package ru.data.anonymization.tool.methods.options;
+
+import java.sql.SQLException;
+import java.util.Set;
+
+/**
+ * Ошибки одного запроса на стороне БД, после которых метод может выполниться построчно:
+ * значение не приводится к типу столбца, нет подходящего оператора или функции, неверное выражение.
+ * Остальные ошибки (блокировки, обрыв соединения, нехватка прав) пробрасываются вызывающему коду.
+ */
+public final class SqlFallback {
+
+    // Класс 22 - ошибки данных (приведение, формат даты, переполнение, регулярное выражение);
+    // 42804 - несовпадение типов, 42846 - недопустимое приведение, 42883 - нет оператора или функции,
+    // 42601 - синтаксическая ошибка
+    private static final Set<String> TYPE_OR_SYNTAX = Set.of("42804", "42846", "42883", "42601");
+
+    private SqlFallback() {
+    }
+
+    public static boolean isTypeOrSyntaxError(SQLException e) {
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("22") || TYPE_OR_SYNTAX.contains(state));
+    }
+}
@@ -0,0 +1,105 @@
+package ru.data.anonymization.tool.methods.options;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Хеширование значений HMAC-SHA3-256 в шестнадцатеричную строку.
+ * Значения передаются порциями ограниченного размера: различные значения порции хешируются параллельно
+ * (у каждого потока свой экземпляр алгоритма), а значения, уже встречавшиеся в предыдущих порциях,
+ * берутся из кэша ограниченного размера с вытеснением давно не использованных. Экземпляр не потокобезопасен.
+ */
+public class ValueHasher {
+
+    private static final String MAC_ALGORITHM = "HmacSHA3-256";
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int KEY_BYTES = 32;
+    private static final int CACHE_SIZE = 1 << 16;
+
+    private final ThreadLocal<Mac> macs;
+    private final Map<String, String> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    public ValueHasher(String key) throws GeneralSecurityException {
+        if (key == null || key.isEmpty()) {
+            throw new IllegalArgumentException("Не задан ключ HMAC");
+        }
+        SecretKeySpec secret = new SecretKeySpec(key.getBytes(StandardCharsets.UTF_8), MAC_ALGORITHM);
+        Mac.getInstance(MAC_ALGORITHM).init(secret);
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(MAC_ALGORITHM);
+                mac.init(secret);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    // Случайный ключ из 256 бит в шестнадцатеричном виде
+    public static String generateKey() {
+        byte[] key = new byte[KEY_BYTES];
+        new SecureRandom().nextBytes(key);
+        return toHex(key);
+    }
+
+    public String hash(String value) {
+        return toHex(macs.get().doFinal(value.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // Хеши порции значений в том же порядке; для null результат null
+    public String[] hashAll(String[] values, int size) {
+        String[] hashes = new String[size];
+        Map<String, Integer> indexes = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        int[] codes = new int[size];
+        for (int i = 0; i < size; i++) {
+            if (values[i] == null) {
+                continue;
+            }
+            hashes[i] = cache.get(values[i]);
+            if (hashes[i] == null) {
+                codes[i] = indexes.computeIfAbsent(values[i], value -> {
+                    missing.add(value);
+                    return missing.size() - 1;
+                });
+            }
+        }
+
+        String[] computed = new String[missing.size()];
+        IntStream.range(0, computed.length).parallel().forEach(i -> computed[i] = hash(missing.get(i)));
+        for (int i = 0; i < computed.length; i++) {
+            cache.put(missing.get(i), computed[i]);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (values[i] != null && hashes[i] == null) {
+                hashes[i] = computed[codes[i]];
+            }
+        }
+        return hashes;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+}
@@ -2,16 +2,25 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
+import ru.data.anonymization.tool.methods.options.SqlFallback;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 import java.sql.Date;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
 public class DateAging implements MaskItem {
+    private static final long serialVersionUID = 8539174463073113549L;
+
     private String nameTable;
     private String nameColumn;
     private int countDays;
@@ -28,18 +37,40 @@ public class DateAging implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        try {
+            controllerDB.execute("UPDATE " + nameTable + " SET " + nameColumn + " = " + nameColumn
+                                 + " + make_interval(days => " + countDays + ") WHERE " + nameColumn + " IS NOT NULL;");
+        } catch (SQLException e) {
+            if (!SqlFallback.isTypeOrSyntaxError(e)) {
+                throw e;
+            }
+            startByRows(controllerDB);
+        }
+    }
+
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        Column column = MemoryColumns.column(table, nameColumn);
+        Column aged = MemoryColumns.mapDates(column, date -> date.plusDays(countDays));
+        tables.put(nameTable, table.withColumn(nameColumn, aged));
+    }
+
+    // Построчный вариант для столбцов, к которым нельзя прибавить интервал (например, даты в TEXT)
+    private void startByRows(DatabaseConnectionService controllerDB) throws Exception {
         controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN masking_method_temp_id INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
 
         ResultSet resultSet = controllerDB.executeQuery("SELECT " + nameColumn + ", masking_method_temp_id FROM " + nameTable + ";");
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, "masking_method_temp_id").column(nameColumn);
         Date cur;
         while (resultSet.next()) {
             cur = resultSet.getDate(1);
             if (cur == null) {
                 continue;
             }
-            resultSet.updateDate(1, Date.valueOf(cur.toLocalDate().plusDays(countDays)));
-            resultSet.updateRow();
+            update.add(resultSet.getInt(2), Date.valueOf(cur.toLocalDate().plusDays(countDays)));
         }
+        update.apply();
         controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN masking_method_temp_id;");
     }
 }
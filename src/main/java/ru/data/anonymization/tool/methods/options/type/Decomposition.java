@@ -3,17 +3,24 @@ package ru.data.anonymization.tool.methods.options.type;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import ru.data.anonymization.tool.methods.controllers.ControllerDB;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.IntColumn;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
-import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Decomposition implements MaskItem {
+    private static final long serialVersionUID = -1074693617083619725L;
 
     private String nameTable;
     private List<String> nameColumns;
@@ -29,68 +36,80 @@ public class Decomposition implements MaskItem {
         return nameColumns;
     }
 
+    // Новая таблица заполняется одним запросом в случайном порядке строк, ссылка id_<новая таблица>
+    // проставляется по физическому адресу строки (ctid); всё выполняется в одной транзакции
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
-        String tempId = "temp_id_by_decomposition";
-
+        String sourceRow = "source_ctid_by_decomposition";
         String columnsRow = convertStringArrayToString(nameColumns);
-        controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + tempId
-                             + " INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY;");
-
-        controllerDB.execute(
-                "ALTER TABLE " + nameTable + " ADD COLUMN id_" + nameNewTable + " INT DEFAULT 0;");
 
-        StringBuilder getColumns = new StringBuilder(
-                "( column_name = '" + nameColumns.get(0) + "'");
-        for (int i = 1; i < nameColumns.size(); i++) {
-            getColumns.append(" or column_name = '").append(nameColumns.get(i)).append("'");
+        controllerDB.setAutoCommit(false);
+        try {
+            controllerDB.execute("DROP TABLE IF EXISTS " + nameNewTable + ";");
+            controllerDB.execute(
+                    "CREATE TABLE " + nameNewTable + " AS SELECT (row_number() OVER (ORDER BY random()))::int AS id, "
+                    + columnsRow + ", ctid AS " + sourceRow + " FROM " + nameTable + ";");
+            controllerDB.execute(
+                    "ALTER TABLE " + nameTable + " ADD COLUMN id_" + nameNewTable + " INT DEFAULT 0;");
+            controllerDB.execute(
+                    "UPDATE " + nameTable + " SET id_" + nameNewTable + " = n.id FROM " + nameNewTable
+                    + " n WHERE " + nameTable + ".ctid = n." + sourceRow + ";");
+
+            controllerDB.execute("ALTER TABLE " + nameNewTable + " DROP COLUMN " + sourceRow + ";");
+            controllerDB.execute("ALTER TABLE " + nameNewTable + " ADD PRIMARY KEY (id);");
+            controllerDB.execute("CREATE SEQUENCE " + nameNewTable + "_id_seq OWNED BY " + nameNewTable + ".id;");
+            controllerDB.execute("SELECT setval('" + nameNewTable + "_id_seq', (SELECT count(*) + 1 FROM "
+                                 + nameNewTable + "), false);");
+            controllerDB.execute("ALTER TABLE " + nameNewTable + " ALTER COLUMN id SET DEFAULT nextval('"
+                                 + nameNewTable + "_id_seq');");
+
+            for (String nameColumn : nameColumns) {
+                controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameColumn + ";");
+            }
+            controllerDB.commit();
+        } catch (Exception e) {
+            controllerDB.rollback();
+            throw e;
+        } finally {
+            controllerDB.setAutoCommit(true);
         }
-        getColumns.append(")");
-
-        ResultSet result = controllerDB.executeQuery(
-                "SELECT data_type FROM information_schema.columns WHERE " + getColumns
-                + " AND table_name = '" + nameTable + "';");
-        result.next();
-
-        String typeColumn = result.getString(1);
-        String getTypes = nameColumns.get(0) + " " + typeColumn;
+    }
 
-        for (int i = 1; i < nameColumns.size(); i++) {
-            result.next();
-            typeColumn = result.getString(1);
-            getTypes += ", " + nameColumns.get(i) + " " + typeColumn;
+    // Строки новой таблицы идут в случайном порядке, в исходной таблице остаётся ссылка id_<новая таблица>
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        int size = table.getRowCount();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
         }
-
-        result = controllerDB.executeQuery(
-                "SELECT " + columnsRow + ", id_" + nameNewTable + ", " + tempId + " FROM "
-                + nameTable + " ORDER BY RANDOM();");
-        controllerDB.connect();
-        controllerDB.execute(
-                "DROP TABLE IF EXISTS " + nameNewTable + ";");
-        controllerDB.execute(
-                "CREATE TABLE " + nameNewTable + "(id SERIAL PRIMARY KEY, " + getTypes + ");");
-        int id = 1;
-
-        String insertRow;
-        while (result.next()) {
-            insertRow = "'" + result.getString(1) + "'";
-            for (int i = 2; i < nameColumns.size() + 1; i++) {
-                insertRow += ",'" + result.getString(i) + "'";
-            }
-
-            controllerDB.execute(
-                    "INSERT INTO " + nameNewTable + " (" + columnsRow + ") values(" + insertRow
-                    + ");"
-            );
-            result.updateInt(nameColumns.size() + 1, id++);
-            result.updateRow();
+        Random random = new Random();
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int buf = order[i];
+            order[i] = order[j];
+            order[j] = buf;
         }
 
-        controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + tempId + ";");
+        int[] newIds = new int[size];
+        int[] links = new int[size];
+        for (int i = 0; i < size; i++) {
+            newIds[i] = i + 1;
+            links[order[i]] = i + 1;
+        }
 
+        List<String> newNames = new ArrayList<>();
+        List<Column> newColumns = new ArrayList<>();
+        newNames.add("id");
+        newColumns.add(new IntColumn(newIds, new BitSet(), size));
         for (String nameColumn : nameColumns) {
-            controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameColumn + ";");
+            newNames.add(nameColumn);
+            newColumns.add(MemoryColumns.column(table, nameColumn).select(order));
         }
+        tables.put(nameNewTable, TableData.ofColumns(nameNewTable, newNames, newColumns));
+        tables.put(nameTable, table.withColumn("id_" + nameNewTable, new IntColumn(links, new BitSet(), size))
+                .withoutColumns(nameColumns));
     }
 
     private String convertStringArrayToString(List<String> strArr) {
@@ -1,16 +1,20 @@
 package ru.data.anonymization.tool.methods.options.type;
 
 import java.util.List;
+import java.util.Map;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class DeleteMethod implements MaskItem {
+    private static final long serialVersionUID = 5003249665157851187L;
 
     private String nameTable;
     private List<String> nameColumns;
@@ -23,6 +27,12 @@ public class DeleteMethod implements MaskItem {
         }
     }
 
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        tables.put(nameTable, table.withoutColumns(nameColumns));
+    }
+
     @Override
     public String getTable() {
         return nameTable;
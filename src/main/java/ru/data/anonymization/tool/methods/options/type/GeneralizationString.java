@@ -2,17 +2,26 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.methods.options.CopyBuffer;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
+import ru.data.anonymization.tool.methods.options.PatternMatcher;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
-import java.sql.SQLException;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 
 @Data
 @NoArgsConstructor
 //Сделать для нескольких
 public class GeneralizationString implements MaskItem {
+    private static final long serialVersionUID = -7667912739221932970L;
 
     private String nameTable;
     private String nameColumn;
@@ -29,23 +38,74 @@ public class GeneralizationString implements MaskItem {
         return List.of(nameColumn);
     }
 
+    // Правила проверяются оператором ~ (регулярные выражения PostgreSQL), как и раньше, но не на всей таблице,
+    // а на таблице её различных значений; затем обобщения применяются одним UPDATE через соединение
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        String mappingTable = "generalization_map_" + nameColumn;
+
         controllerDB.execute("DROP TABLE IF EXISTS " + generalizationTable + ";");
         controllerDB.execute(
                 "CREATE TABLE " + generalizationTable + "(generalization text,value text);");
-        values.forEach((key, value) -> {
-            try {
-                controllerDB.execute(
-                        "UPDATE " + nameTable + " SET " + nameColumn + "='" + value + "' WHERE "
-                        + nameColumn + "~'" + key + "';");
-                controllerDB.execute(
-                        "INSERT INTO " + generalizationTable + " VALUES ('" + value + "', '" + key
-                        + "');");
-            } catch (SQLException e) {
-                throw new RuntimeException(e);
+        CopyBuffer rules = new CopyBuffer(controllerDB, generalizationTable, List.of("generalization", "value"));
+        for (Map.Entry<String, String> rule : values.entrySet()) {
+            rules.add(rule.getValue(), rule.getKey());
+        }
+        rules.finish();
+
+        controllerDB.execute("DROP TABLE IF EXISTS " + mappingTable + ";");
+        controllerDB.execute("CREATE TEMP TABLE " + mappingTable + " AS SELECT DISTINCT " + nameColumn
+                             + "::text AS value, " + nameColumn + "::text AS generalization FROM " + nameTable
+                             + " WHERE " + nameColumn + " IS NOT NULL;");
+        // Правила выполняются по очереди: следующие проверяются уже на обобщённом значении
+        try (PreparedStatement statement = controllerDB.getPrepareStatement(
+                "UPDATE " + mappingTable + " SET generalization = ? WHERE generalization ~ ?;")) {
+            for (Map.Entry<String, String> rule : values.entrySet()) {
+                statement.setString(1, rule.getValue());
+                statement.setString(2, rule.getKey());
+                statement.addBatch();
             }
-        });
+            statement.executeBatch();
+        }
+        controllerDB.execute("DELETE FROM " + mappingTable + " WHERE generalization = value;");
+        controllerDB.execute("ANALYZE " + mappingTable + ";");
+        controllerDB.execute("UPDATE " + nameTable + " SET " + nameColumn + " = m.generalization FROM "
+                             + mappingTable + " m WHERE " + nameTable + "." + nameColumn + "::text = m.value;");
+        controllerDB.execute("DROP TABLE " + mappingTable + ";");
+    }
+
+    @Override
+    public void start(Map<String, TableData> tables) {
+        UnaryOperator<String> resolver = resolver();
+        TableData.Builder rules = TableData.builder(generalizationTable, List.of("generalization", "value"));
+        values.forEach((key, value) -> rules.addRow(List.of(value, key)));
+
+        TableData table = MemoryColumns.table(tables, nameTable);
+        Column column = MemoryColumns.column(table, nameColumn);
+        tables.put(nameTable, table.withColumn(nameColumn, MemoryColumns.mapStrings(column, resolver)));
+        tables.put(generalizationTable, rules.build());
     }
 
-}
\ No newline at end of file
+    // Для CSV правила - регулярные выражения Java. Правила применяются по очереди, как в БД: после замены
+    // следующие правила проверяются уже на обобщённом значении. Цепочки замен для обобщений запоминаются
+    private UnaryOperator<String> resolver() {
+        List<String> keys = new ArrayList<>(values.keySet());
+        List<String> generalizations = new ArrayList<>(values.values());
+        PatternMatcher matcher = new PatternMatcher(keys);
+        Map<Integer, String> chains = new HashMap<>();
+        return value -> {
+            int rule = matcher.firstMatch(value, 0);
+            if (rule < 0) {
+                return value;
+            }
+            return chains.computeIfAbsent(rule, first -> {
+                int current = first;
+                String result = generalizations.get(current);
+                while ((current = matcher.firstMatch(result, current + 1)) >= 0) {
+                    result = generalizations.get(current);
+                }
+                return result;
+            });
+        };
+    }
+}
@@ -1,23 +1,27 @@
 package ru.data.anonymization.tool.methods.options.type;
 
-import java.sql.Date;
-import java.time.LocalDate;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
-
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.ColumnBuilder;
+import ru.data.anonymization.tool.dto.column.DateColumn;
+import ru.data.anonymization.tool.dto.column.DoubleColumn;
+import ru.data.anonymization.tool.methods.options.CopyBuffer;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
-import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 
 @Data
-@Slf4j
 @NoArgsConstructor
 public class GeneralizationValue implements MaskItem {
+    private static final long serialVersionUID = 7398586736966838877L;
 
     private String dateType;
     private String nameTable;
@@ -39,215 +43,226 @@ public class GeneralizationValue implements MaskItem {
         return List.of(nameColumn);
     }
 
+    // Номер диапазона каждой строки вычисляется одним выражением CASE (первый подходящий диапазон),
+    // агрегаты всех групп - одним запросом с GROUP BY
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
         String isChangeNameColumn = "is_change_temp_column";
         String newColumn = "is_new_temp_column";
-        int countGroup = 0;
-        controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + isChangeNameColumn
-                             + " TEXT");
-        controllerDB.execute(
-                "UPDATE " + nameTable + " SET " + isChangeNameColumn + " = " + nameColumn
-                + "::TEXT");
+        String group = groupExpression();
+
         if (instruct.equals("default")) {
             controllerDB.execute("DROP TABLE IF EXISTS " + generalizationTable + ";");
             controllerDB.execute("CREATE TABLE IF NOT EXISTS " + generalizationTable
                                  + " (id SERIAL PRIMARY KEY, value text);");
-        } else {
-            if (isDate) {
-                controllerDB.execute(
-                        "ALTER TABLE " + nameTable + " ADD COLUMN " + newColumn + " DATE;"
-                );
-                controllerDB.execute(
-                        "UPDATE " + nameTable + " SET " + newColumn + " = " + nameColumn
-                );
-            } else {
-                controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + newColumn
-                                     + " FLOAT;");
-                controllerDB.execute(
-                        "UPDATE " + nameTable + " SET " + newColumn + " = " + nameColumn
-                        + ";");
+            CopyBuffer names = new CopyBuffer(controllerDB, generalizationTable, List.of("value"));
+            for (String name : generalizationName) {
+                names.add(name);
             }
+            names.finish();
+
+            controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + isChangeNameColumn + " TEXT;");
+            controllerDB.execute("UPDATE " + nameTable + " SET " + isChangeNameColumn + " = COALESCE(("
+                                 + group + ")::TEXT, " + nameColumn + "::TEXT);");
+            controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameColumn + ";");
+            controllerDB.execute("ALTER TABLE " + nameTable + " RENAME COLUMN " + isChangeNameColumn + " TO "
+                                 + nameColumn + ";");
+            return;
         }
-        List<Object> objects = new ArrayList<>();
-        for (int i = 0; i < generalizationName.size(); i++) {
-            objects.add(i + 1);
-            String notInIds = "AND %s NOT IN (%s);".formatted(
-                    isChangeNameColumn,
-                    objectsToString(objects)
-            );
-            if (instruct.equals("default")) {
-                controllerDB.execute("INSERT INTO " + generalizationTable + " (value) VALUES ('"
-                                     + generalizationName.get(i) + "');");
-            } else {
-                countGroup++;
-            }
-            if (isDate) {
-                System.out.println("UPDATE " + nameTable +
-                                   " SET " + isChangeNameColumn + "=" + (i + 1) +
-                                   " WHERE " + nameColumn + ">'" + minValue.get(i) +
-                                   "' AND " + nameColumn + "<='" + maxValue.get(i) + "'" + notInIds
-                );
-                controllerDB.execute(
-                        "UPDATE " + nameTable +
-                        " SET " + isChangeNameColumn + "=" + (i + 1) +
-                        " WHERE " + nameColumn + ">'" + minValue.get(i) +
-                        "' AND " + nameColumn + "<='" + maxValue.get(i) + "'" + notInIds
-                );
-
-            } else {
-                var changeSql = "UPDATE " + nameTable +
-                                " SET " + isChangeNameColumn + "=" + (i + 1) +
-                                " WHERE " + nameColumn + ">'" + minValue.get(i) + "'" +
-                                " AND " + nameColumn + "<='" + maxValue.get(i) + "'" + notInIds;
-                controllerDB.execute(changeSql);
+
+        String aggregate = switch (instruct) {
+            case "average" -> isDate
+                    ? "DATE '1970-01-01' + floor(avg(" + daysExpression() + "))::INT"
+                    : "avg(" + nameColumn + ")";
+            case "median" -> isDate
+                    ? "DATE '1970-01-01' + floor(percentile_cont(0.5) WITHIN GROUP (ORDER BY "
+                      + daysExpression() + "))::INT"
+                    : "percentile_cont(0.5) WITHIN GROUP (ORDER BY " + nameColumn + ")";
+            case "mode" -> "mode() WITHIN GROUP (ORDER BY " + nameColumn + ")";
+            default -> throw new IllegalArgumentException("Неизвестный способ обобщения: " + instruct);
+        };
+
+        controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + isChangeNameColumn + " INT, ADD COLUMN "
+                             + newColumn + (isDate ? " DATE;" : " FLOAT;"));
+        controllerDB.execute("UPDATE " + nameTable + " SET " + isChangeNameColumn + " = " + group + ", "
+                             + newColumn + " = " + nameColumn + ";");
+        controllerDB.execute(
+                "UPDATE " + nameTable + " SET " + newColumn + " = g.value FROM (SELECT " + isChangeNameColumn
+                + " AS group_id, " + aggregate + " AS value FROM " + nameTable + " WHERE " + isChangeNameColumn
+                + " IS NOT NULL GROUP BY " + isChangeNameColumn + ") g WHERE " + nameTable + "."
+                + isChangeNameColumn + " = g.group_id;");
+
+        controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameColumn + ", DROP COLUMN "
+                             + isChangeNameColumn + ";");
+        controllerDB.execute("ALTER TABLE " + nameTable + " RENAME COLUMN " + newColumn + " TO " + nameColumn + ";");
+    }
+
+    // Те же правила, что и в БД: диапазоны (min, max], первый подходящий; в режиме default в столбец
+    // записывается номер диапазона, названия - в таблицу обобщения. Даты сравниваются как номера дней
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        Column column = MemoryColumns.column(table, nameColumn);
+        int rows = table.getRowCount();
+
+        double[] min = new double[generalizationName.size()];
+        double[] max = new double[generalizationName.size()];
+        for (int i = 0; i < min.length; i++) {
+            min[i] = bound(minValue.get(i));
+            max[i] = bound(maxValue.get(i));
+        }
+
+        double[] values = new double[rows];
+        int[] groups = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            values[row] = column.isNull(row) ? Double.NaN : numericValue(column, row);
+            groups[row] = -1;
+            for (int i = 0; i < min.length; i++) {
+                if (values[row] > min[i] && values[row] <= max[i]) {
+                    groups[row] = i;
+                    break;
+                }
             }
         }
-/*        String sql = "SELECT " + isChangeNameColumn + " FROM " + nameTable + ";";
-        System.out.println(sql);
-        try (var resultSet1 = controllerDB.executeQuery(sql)) {
-            while (resultSet1.next()) {
-                System.out.println(resultSet1.getObject(1));
+
+        if (instruct.equals("default")) {
+            ColumnBuilder generalized = new ColumnBuilder();
+            for (int row = 0; row < rows; row++) {
+                generalized.add(groups[row] >= 0 ? String.valueOf(groups[row] + 1) : column.getString(row));
             }
-        }*/
-
-        switch (instruct) {
-            case "average" -> {
-                for (int i = 1; i <= countGroup; i++) {
-                    ResultSet resultSet;
-                    if (dateType.equals("Date")) {
-                        String sql =
-                                """
-                                                SELECT (TO_TIMESTAMP(AVG(EXTRACT(EPOCH FROM %s))))::DATE AS avg_date
-                                                FROM %s
-                                                WHERE %s IS NOT NULL
-                                                AND %s LIKE '%d';
-                                        """.formatted(
-                                        nameColumn,
-                                        nameTable,
-                                        nameColumn,
-                                        isChangeNameColumn,
-                                        i
-                                );
-                        resultSet = controllerDB.executeQuery(sql);
-                    } else {
-                        resultSet = controllerDB.executeQuery(
-                                "select avg(" + nameColumn + ")" + " FROM " + nameTable + " WHERE "
-                                + nameColumn + " is not null and " + isChangeNameColumn + " LIKE '"
-                                + i
-                                + "';");
-                    }
+            ColumnBuilder ids = new ColumnBuilder();
+            ColumnBuilder names = new ColumnBuilder();
+            for (int i = 0; i < generalizationName.size(); i++) {
+                ids.add(String.valueOf(i + 1));
+                names.add(generalizationName.get(i));
+            }
+            tables.put(generalizationTable, TableData.ofColumns(
+                    generalizationTable, List.of("id", "value"), List.of(ids.build(), names.build())));
+            tables.put(nameTable, table.withColumn(nameColumn, generalized.build()));
+            return;
+        }
 
-                    resultSet.next();
-                    Object value = resultSet.getObject(1);
-                    if (isDate) {
-                        controllerDB.execute(
-                                "UPDATE " + nameTable + " SET " + newColumn + "='" + value
-                                + "' WHERE " + isChangeNameColumn + " LIKE '" + i + "';");
-                    } else {
-                        controllerDB.execute(
-                                "UPDATE " + nameTable + " SET " + newColumn + "=" + value
-                                + " WHERE " + isChangeNameColumn + " LIKE '" + i + "';");
-                    }
-                }
+        // Значения групп раскладываются одним проходом; пустые значения в агрегаты не входят, как в SQL
+        int[] counts = new int[generalizationName.size()];
+        for (int row = 0; row < rows; row++) {
+            if (groups[row] >= 0) {
+                counts[groups[row]]++;
             }
-            case "median" -> {
-                for (int i = 1; i <= generalizationName.size(); i++) {
-                    ResultSet resultSet = controllerDB.executeQuery(
-                            "select  count(*) from " + nameTable + " WHERE " + nameColumn
-                            + " IS NOT NULL and " + isChangeNameColumn + " LIKE '" + i + "';");
-                    resultSet.next();
-                    long size = resultSet.getLong(1);
-                    long meddle = Math.round((float) size / 2) - 1;
-                    Object value;
-
-                    if ((size % 2) == 1) {
-                        resultSet = controllerDB.executeQuery(
-                                "SELECT " + nameColumn + " FROM " + nameTable + " WHERE "
-                                + nameColumn + " IS NOT NULL and " + isChangeNameColumn + " LIKE '"
-                                + i
-                                + "' ORDER BY " + nameColumn + " OFFSET " + meddle + " LIMIT 1;");
-                        resultSet.next();
-                        value = resultSet.getObject(1);
-                    } else {
-                        resultSet = controllerDB.executeQuery(
-                                "SELECT " + nameColumn + " FROM " + nameTable + " WHERE "
-                                + nameColumn + " IS NOT NULL and " + isChangeNameColumn + " LIKE '"
-                                + i
-                                + "' ORDER BY " + nameColumn + " OFFSET " + meddle + " LIMIT 2;");
-                        resultSet.next();
-                        value = resultSet.getObject(1);
-                        if (value instanceof Number number) {
-                            resultSet.next();
-                            value = (number.intValue() + resultSet.getLong(1)) / 2;
-                        } else {
-                            resultSet.next();
-                            LocalDate secValue = resultSet.getDate(1).toLocalDate();
-                            long daysBetween = ChronoUnit.DAYS.between(
-                                    ((Date) value).toLocalDate(),
-                                    secValue
-                            );
-                            value = ((Date) value).toLocalDate().plusDays(daysBetween / 2);
-                        }
+        }
+        double[][] members = new double[counts.length][];
+        for (int i = 0; i < counts.length; i++) {
+            members[i] = new double[counts[i]];
+            counts[i] = 0;
+        }
+        for (int row = 0; row < rows; row++) {
+            if (groups[row] >= 0) {
+                members[groups[row]][counts[groups[row]]++] = values[row];
+            }
+        }
+        double[] aggregates = new double[counts.length];
+        for (int i = 0; i < aggregates.length; i++) {
+            aggregates[i] = aggregate(members[i]);
+        }
 
-                    }
+        BitSet nulls = new BitSet(rows);
+        double[] result = new double[rows];
+        for (int row = 0; row < rows; row++) {
+            result[row] = groups[row] >= 0 ? aggregates[groups[row]] : values[row];
+            if (Double.isNaN(result[row])) {
+                nulls.set(row);
+            }
+        }
+        if (isDate) {
+            int[] epochDays = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                epochDays[row] = nulls.get(row) ? 0 : (int) result[row];
+            }
+            tables.put(nameTable, table.withColumn(nameColumn, new DateColumn(epochDays, nulls, rows)));
+        } else {
+            tables.put(nameTable, table.withColumn(nameColumn, new DoubleColumn(result, nulls, rows)));
+        }
+    }
 
-                    if (isDate) {
-                        controllerDB.execute(
-                                "UPDATE " + nameTable + " SET " + newColumn + "='" + value
-                                + "' WHERE " + isChangeNameColumn + " LIKE '" + i + "';");
-                    } else {
-                        controllerDB.execute(
-                                "UPDATE " + nameTable + " SET " + newColumn + "=" + value
-                                + " WHERE " + isChangeNameColumn + " LIKE '" + i + "';");
-                    }
-                }
+    // avg, percentile_cont(0.5) и mode() (при равных частотах - наименьшее значение); даты округляются вниз
+    private double aggregate(double[] members) {
+        if (members.length == 0) {
+            return Double.NaN;
+        }
+        Arrays.sort(members);
+        double value = switch (instruct) {
+            case "average" -> Arrays.stream(members).sum() / members.length;
+            case "median" -> {
+                double position = (members.length - 1) / 2.0;
+                int lower = (int) Math.floor(position);
+                yield members[lower] + (position - lower) * (members[(int) Math.ceil(position)] - members[lower]);
             }
             case "mode" -> {
-                for (int i = 1; i <= generalizationName.size(); i++) {
-                    ResultSet resultSet = controllerDB.executeQuery(
-                            "select  mode() within group (order by " + nameColumn + ") from "
-                            + nameTable + " WHERE " + isChangeNameColumn + " LIKE '" + i + "';");
-                    resultSet.next();
-                    Object value = resultSet.getObject(1);
-
-                    if (isDate) {
-                        controllerDB.execute(
-                                "UPDATE " + nameTable + " SET " + newColumn + "='" + value
-                                + "' WHERE " + isChangeNameColumn + " LIKE '" + i + "';");
-                    } else {
-                        controllerDB.execute(
-                                "UPDATE " + nameTable + " SET " + newColumn + "=" + value
-                                + " WHERE " + isChangeNameColumn + " LIKE '" + i + "';");
+                double mode = members[0];
+                int best = 0;
+                for (int from = 0; from < members.length; ) {
+                    int to = from;
+                    while (to < members.length && members[to] == members[from]) {
+                        to++;
+                    }
+                    if (to - from > best) {
+                        best = to - from;
+                        mode = members[from];
                     }
+                    from = to;
                 }
+                yield mode;
             }
+            default -> throw new IllegalArgumentException("Неизвестный способ обобщения: " + instruct);
+        };
+        return isDate ? Math.floor(value) : value;
+    }
+
+    // Значение строки как число (для дат - номер дня); NaN, если значение не разбирается
+    private double numericValue(Column column, int row) {
+        if (isDate) {
+            if (column instanceof DateColumn dates) {
+                return dates.getEpochDay(row);
+            }
+            LocalDate date = MemoryColumns.parseDate(column.getString(row));
+            return date == null ? Double.NaN : date.toEpochDay();
+        }
+        try {
+            return column.getDouble(row);
+        } catch (NumberFormatException e) {
+            return Double.NaN;
         }
+    }
 
-        controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameColumn + ";");
-        if (instruct.equals("default")) {
-            controllerDB.execute(
-                    "ALTER TABLE " + nameTable + " RENAME COLUMN " + isChangeNameColumn + " TO "
-                    + nameColumn + ";");
-        } else {
-            controllerDB.execute(
-                    "ALTER TABLE " + nameTable + " DROP COLUMN " + isChangeNameColumn + ";");
-            controllerDB.execute(
-                    "ALTER TABLE " + nameTable + " RENAME COLUMN " + newColumn + " TO " + nameColumn
-                    + ";");
+    private double bound(Object value) {
+        if (value instanceof LocalDate date) {
+            return date.toEpochDay();
         }
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        }
+        return isDate ? LocalDate.parse(String.valueOf(value)).toEpochDay() : Double.parseDouble(String.valueOf(value));
+    }
+
+    // Диапазоны (min, max]; строка относится к первому подходящему диапазону, иначе NULL
+    private String groupExpression() {
+        if (generalizationName.isEmpty()) {
+            return "NULL::INT";
+        }
+        StringBuilder sql = new StringBuilder("CASE");
+        for (int i = 0; i < generalizationName.size(); i++) {
+            sql.append(" WHEN ").append(nameColumn).append(" > ").append(literal(minValue.get(i)))
+                    .append(" AND ").append(nameColumn).append(" <= ").append(literal(maxValue.get(i)))
+                    .append(" THEN ").append(i + 1);
+        }
+        return sql.append(" END").toString();
+    }
 
+    private String daysExpression() {
+        return "(" + nameColumn + "::DATE - DATE '1970-01-01')";
     }
 
-    private String objectsToString(List<Object> objects) {
-        var stringBuilder = new StringBuilder();
-        objects.forEach(object -> {
-            stringBuilder.append("'");
-            stringBuilder.append(object);
-            stringBuilder.append("'");
-            stringBuilder.append(", ");
-        });
-        return stringBuilder.substring(0, stringBuilder.lastIndexOf(","));
+    private String literal(Object value) {
+        return "'" + String.valueOf(value).replace("'", "''") + "'";
     }
 
 }
@@ -2,22 +2,36 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.ColumnBuilder;
+import ru.data.anonymization.tool.methods.options.CopyBuffer;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
+import ru.data.anonymization.tool.methods.options.ValueHasher;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Data
 @NoArgsConstructor
 public class Identifier implements MaskItem {
+    private static final long serialVersionUID = 8657084684742919187L;
+
+    private static final int CHUNK_SIZE = 1 << 14;
 
     private String nameTable;
     private List<String> namesColumn;
     private String newNameTable;
+    // Секретный ключ HMAC; если не задан, при первом запуске создаётся случайный и сохраняется в настройках,
+    // чтобы повторные запуски давали те же хеши
+    private String key;
 
     @Override
     public String getTable() {
@@ -29,82 +43,104 @@ public class Identifier implements MaskItem {
         return namesColumn;
     }
 
-    private String convertStringArrayToString(List<String> strArr, String idTable) {
-        StringBuilder sb = new StringBuilder();
-        for (String str : strArr) {
-            sb.append(str).append(",");
+    // Столбец заменяется на id_hash_<столбец>, соответствие значение - хеш сохраняется в hash_<столбец>.
+    // Различные значения читаются курсором порциями по CHUNK_SIZE, поэтому память не зависит от размера таблицы
+    @Override
+    public void start(DatabaseConnectionService controllerDB) throws Exception {
+        ValueHasher hasher = new ValueHasher(key());
+        controllerDB.setAutoCommit(false);
+        try {
+            for (var columns : namesColumn) {
+                this.newNameTable = "hash_" + columns;
+                String hashColumn = "id_" + newNameTable;
+
+                controllerDB.execute("CREATE TABLE " + newNameTable + " AS SELECT " + columns + ", NULL::TEXT AS "
+                                     + hashColumn + " FROM " + nameTable + " WITH NO DATA;");
+                CopyBuffer mapping = new CopyBuffer(controllerDB, newNameTable, List.of(columns, hashColumn));
+                try (PreparedStatement statement = controllerDB.getPrepareStatement(
+                        "SELECT DISTINCT " + columns + "::text FROM " + nameTable + " WHERE " + columns
+                        + " IS NOT NULL;")) {
+                    statement.setFetchSize(CHUNK_SIZE);
+                    try (ResultSet result = statement.executeQuery()) {
+                        String[] values = new String[CHUNK_SIZE];
+                        int size = 0;
+                        boolean hasNext = result.next();
+                        while (hasNext) {
+                            values[size++] = result.getString(1);
+                            hasNext = result.next();
+                            if (size == CHUNK_SIZE || !hasNext) {
+                                String[] hashes = hasher.hashAll(values, size);
+                                for (int i = 0; i < size; i++) {
+                                    mapping.add(values[i], hashes[i]);
+                                }
+                                size = 0;
+                            }
+                        }
+                    }
+                }
+                mapping.finish();
+                controllerDB.execute("ANALYZE " + newNameTable + ";");
+
+                controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + hashColumn + " TEXT;");
+                controllerDB.execute("UPDATE " + nameTable + " SET " + hashColumn + " = h." + hashColumn + " FROM "
+                                     + newNameTable + " h WHERE " + nameTable + "." + columns + "::text = h."
+                                     + columns + "::text;");
+                controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + columns + ";");
+            }
+            controllerDB.commit();
+        } catch (Exception e) {
+            controllerDB.rollback();
+            throw e;
+        } finally {
+            controllerDB.setAutoCommit(true);
         }
-        return sb.append(idTable).substring(0, sb.length());
     }
 
     @Override
-    public void start(DatabaseConnectionService controllerDB) throws Exception {
+    public void start(Map<String, TableData> tables) throws Exception {
+        ValueHasher hasher = new ValueHasher(key());
         for (var columns : namesColumn) {
-            String nameTempIdField = "temp_id_by_identifier";
-            int length;
             this.newNameTable = "hash_" + columns;
-
-            controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + nameTempIdField
-                                 + " INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY;");
-            controllerDB.execute(
-                    "ALTER TABLE " + nameTable + " ADD COLUMN id_" + newNameTable + " TEXT;");
-            var someRes = controllerDB.executeQuery("SELECT * FROM " + nameTable);
-
-            ResultSet result = controllerDB.executeQuery(
-                    "select length(" + columns + "::text) from " + nameTable
-                    + " order by length(" + columns + "::text) desc limit 1;");
-            result.next();
-            length = result.getInt(1);
-
-            result = controllerDB.executeQuery(
-                    "SELECT " + nameTempIdField + ", id_" + newNameTable + ", " + nameTempIdField
-                    + " FROM " + nameTable + ";");
-
-            try {
-                final MessageDigest digest = MessageDigest.getInstance("SHA3-256");
-                String hashString, sha3Hex;
-                byte[] hashbytes;
-                while (result.next()) {
-                    hashString = length + result.getString(1);
-                    hashbytes = digest.digest(hashString.getBytes(StandardCharsets.UTF_8));
-                    sha3Hex = bytesToHex(hashbytes);
-                    result.updateString(2, sha3Hex);
-                    result.updateRow();
+            String hashColumn = "id_" + newNameTable;
+            TableData table = MemoryColumns.table(tables, nameTable);
+            Column column = MemoryColumns.column(table, columns);
+
+            int size = column.size();
+            ColumnBuilder builder = new ColumnBuilder();
+            Set<String> written = new HashSet<>();
+            int[] firstRows = new int[size];
+            int count = 0;
+            String[] values = new String[Math.min(CHUNK_SIZE, size)];
+            for (int from = 0; from < size; from += CHUNK_SIZE) {
+                int length = Math.min(CHUNK_SIZE, size - from);
+                for (int i = 0; i < length; i++) {
+                    values[i] = column.getString(from + i);
                 }
-            } catch (Exception e) {
-                return;
-            }
-
-            String columnsRow = columns + ",id_" + newNameTable;
-            controllerDB.execute(
-                    "CREATE TABLE " + newNameTable + " AS (SELECT " + columnsRow + " FROM "
-                    + nameTable
-                    + ");");
-                try {
-                    controllerDB.execute(
-                            "ALTER TABLE " + nameTable + " DROP COLUMN " + columns + ";"
-                    );
-                } catch (SQLException e) {
-                    throw new RuntimeException(e);
+                String[] hashes = hasher.hashAll(values, length);
+                for (int i = 0; i < length; i++) {
+                    builder.add(hashes[i]);
+                    if (values[i] != null && written.add(values[i])) {
+                        firstRows[count++] = from + i;
+                    }
                 }
-
-
-            controllerDB.execute(
-                    "ALTER TABLE " + nameTable + " DROP COLUMN " + nameTempIdField + ";");
+            }
+            Column hashed = builder.build();
+            int[] distinct = Arrays.copyOf(firstRows, count);
+
+            tables.put(newNameTable, TableData.ofColumns(
+                    newNameTable,
+                    List.of(columns, hashColumn),
+                    List.of(column.select(distinct), hashed.select(distinct))
+            ));
+            tables.put(nameTable, table.withColumn(hashColumn, hashed).withoutColumns(List.of(columns)));
         }
-
     }
 
-    private String bytesToHex(byte[] hash) {
-        StringBuilder hexString = new StringBuilder(2 * hash.length);
-        for (byte b : hash) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) {
-                hexString.append('0');
-            }
-            hexString.append(hex);
+    private String key() {
+        if (key == null || key.isEmpty()) {
+            key = ValueHasher.generateKey();
         }
-        return hexString.toString();
+        return key;
     }
 
 }
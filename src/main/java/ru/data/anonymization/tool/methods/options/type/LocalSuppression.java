@@ -1,24 +1,36 @@
 package ru.data.anonymization.tool.methods.options.type;
 
 import java.sql.PreparedStatement;
-import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Types;
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.ColumnBuilder;
+import ru.data.anonymization.tool.dto.column.DateColumn;
+import ru.data.anonymization.tool.dto.column.DoubleColumn;
+import ru.data.anonymization.tool.dto.column.IntColumn;
+import ru.data.anonymization.tool.dto.column.LongColumn;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 import ru.data.anonymization.tool.service.TableInfoService;
 
 @Data
 @NoArgsConstructor
 public class LocalSuppression implements MaskItem {
+    private static final long serialVersionUID = 3179730235380433544L;
+
+    private static final String NUMBER_PATTERN = "^-?\\d+(\\.\\d+)?$";
 
     private TableInfoService tableInfoService;
     private String nameTable;
@@ -26,23 +38,96 @@ public class LocalSuppression implements MaskItem {
     private int k;
     private int n;
     private String replacementValue;
+    // Подавляются записи из классов эквивалентности размером меньше порога (не меньше 2)
+    private int threshold;
 
-    private String columnsRow;
-    private String columnsRowCount;
-
+    // Каждый вариант выполняется одним запросом: строки редких классов находятся оконной функцией
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
-        Map<String, List<Object>> uniqueRecords = findUniqueRecords(controllerDB);
         switch (n) {
-            case 1 -> deleteRecords(uniqueRecords, controllerDB);
-            case 2 -> replaceWithNone(uniqueRecords, controllerDB);
+            case 1 -> controllerDB.execute("DELETE FROM " + nameTable + " WHERE " + rareRecords() + ";");
+            case 2 -> controllerDB.execute("UPDATE " + nameTable + " SET " + assignments("NULL")
+                                           + " WHERE " + rareRecords() + ";");
             case 3 -> {
-                var replacementValues = getReplacementValues(k, replacementValue, controllerDB);
-                updateUniqueValues(controllerDB, uniqueRecords, replacementValues);
+                if (k == 1) {
+                    replaceWithAverage(controllerDB);
+                } else if (k == 2) {
+                    replaceWithValue(controllerDB);
+                }
             }
             default -> System.out.println("Invalid suppression option.");
         }
+    }
 
+    // Размеры классов считаются одним проходом по строкам (как count(*) OVER (PARTITION BY ...)),
+    // затем строки редких классов удаляются или заменяются с сохранением типа столбцов
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        int rows = table.getRowCount();
+        Column[] columns = new Column[namesColumn.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = MemoryColumns.column(table, namesColumn.get(i));
+        }
+
+        Map<List<String>, int[]> classSizes = new HashMap<>();
+        List<List<String>> keys = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            String[] key = new String[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                key[i] = columns[i].getString(row);
+            }
+            List<String> classKey = Arrays.asList(key);
+            keys.add(classKey);
+            classSizes.computeIfAbsent(classKey, ignored -> new int[1])[0]++;
+        }
+        BitSet rare = new BitSet(rows);
+        for (int row = 0; row < rows; row++) {
+            if (classSizes.get(keys.get(row))[0] < minClassSize()) {
+                rare.set(row);
+            }
+        }
+
+        switch (n) {
+            case 1 -> {
+                int[] kept = new int[rows - rare.cardinality()];
+                int count = 0;
+                for (int row = rare.nextClearBit(0); row < rows; row = rare.nextClearBit(row + 1)) {
+                    kept[count++] = row;
+                }
+                table = table.select(kept);
+            }
+            case 2 -> {
+                for (int i = 0; i < columns.length; i++) {
+                    table = table.withColumn(namesColumn.get(i), replaceRows(columns[i], rare, null));
+                }
+            }
+            case 3 -> {
+                if (k == 1) {
+                    for (int i = 0; i < columns.length; i++) {
+                        Object average = average(columns[i]);
+                        if (average != null) {
+                            table = table.withColumn(namesColumn.get(i), replaceRows(columns[i], rare, average));
+                        }
+                    }
+                } else if (k == 2) {
+                    String replacement = replacementValue == null ? "" : replacementValue;
+                    Object[] values = new Object[columns.length];
+                    for (int i = 0; i < columns.length; i++) {
+                        values[i] = typedValue(columns[i], replacement);
+                        if (values[i] == null) {
+                            System.out.println("Replacement value does not match type of " + namesColumn.get(i) + ".");
+                            return;
+                        }
+                    }
+                    for (int i = 0; i < columns.length; i++) {
+                        table = table.withColumn(namesColumn.get(i), replaceRows(columns[i], rare, values[i]));
+                    }
+                }
+            }
+            default -> System.out.println("Invalid suppression option.");
+        }
+        tables.put(nameTable, table);
     }
 
     @Override
@@ -55,200 +140,173 @@ public class LocalSuppression implements MaskItem {
         return namesColumn;
     }
 
-    private Map<String, List<Object>> findUniqueRecords(DatabaseConnectionService controllerDB)
-            throws
-            SQLException {
-        Map<String, List<Object>> uniqueRecords = new HashMap<>();
-
-        String columnsPart = getColumnsNameAsString(namesColumn);
-        String sql = "SELECT %s ,COUNT(*)  FROM %s GROUP BY %s HAVING COUNT(*) = 1;".formatted(
-                columnsPart,
-                nameTable,
-                columnsPart
-        );
+    // Условие на строки классов эквивалентности размером меньше порога; NULL считаются одним значением
+    private String rareRecords() {
+        String columnsPart = String.join(", ", namesColumn);
+        return nameTable + ".ctid = ANY(ARRAY(SELECT ctid FROM (SELECT ctid, count(*) OVER (PARTITION BY " + columnsPart
+               + ") AS class_size FROM " + nameTable + ") classes WHERE class_size < " + minClassSize() + "))";
+    }
 
-        return getStringListMap(controllerDB, uniqueRecords, sql);
+    private int minClassSize() {
+        return Math.max(threshold, 2);
+    }
 
+    private String assignments(String value) {
+        List<String> parts = new ArrayList<>();
+        namesColumn.forEach(column -> parts.add(column + " = " + value));
+        return String.join(", ", parts);
     }
 
-    private Map<String, List<Object>> getStringListMap(
-            DatabaseConnectionService controllerDB,
-            Map<String, List<Object>> records,
-            String sql) throws SQLException {
-        try (PreparedStatement stmt = controllerDB.getPrepareStatement(sql)) {
-            System.out.println(stmt);
-            try (ResultSet rs = stmt.executeQuery()) {
-                while (rs.next()) {
-                    List<Object> values = new ArrayList<>();
-                    for (String column : namesColumn) {
-                        values.add(rs.getObject(column));
-                    }
-                    records.put(UUID.randomUUID().toString(), values);
-                }
+    // k=1: средние значения по всей таблице считаются в том же запросе, столбцы других типов не меняются
+    private void replaceWithAverage(DatabaseConnectionService controllerDB) throws SQLException {
+        List<String> assignments = new ArrayList<>();
+        List<String> averages = new ArrayList<>();
+        for (String column : namesColumn) {
+            String attributeType = tableInfoService.getAttributeType(nameTable, column);
+            String average = switch (attributeType) {
+                case "integer", "bigint", "smallint" -> "round(avg(" + column + "))";
+                case "real", "double precision", "numeric" -> "avg(" + column + ")";
+                case "date" -> "DATE '1970-01-01' + floor(avg(" + column + " - DATE '1970-01-01'))::INT";
+                default -> null;
+            };
+            if (average != null) {
+                averages.add(average + " AS " + column);
+                assignments.add(column + " = COALESCE(a." + column + ", " + nameTable + "." + column + ")");
             }
-            System.out.println("Found " + records.size() + " unique records.");
-            return records;
         }
+        if (assignments.isEmpty()) {
+            return;
+        }
+        controllerDB.execute("UPDATE " + nameTable + " SET " + String.join(", ", assignments) + " FROM (SELECT "
+                             + String.join(", ", averages) + " FROM " + nameTable + ") a WHERE "
+                             + rareRecords() + ";");
     }
 
-    // n=1: Удаление записей
-    private void deleteRecords(
-            Map<String, List<Object>> uniqueRecords,
-            DatabaseConnectionService controllerDB) throws SQLException {
-        for (List<Object> values : uniqueRecords.values()) {
-            String whereClause = buildWhereClause(values);
-            String deleteSQL = "DELETE FROM " + nameTable + " WHERE " + whereClause;
-            controllerDB.execute(deleteSQL);
+    // k=2: значение, введённое вручную, передаётся параметром; если оно не подходит к типу
+    // какого-либо столбца, записи не меняются
+    private void replaceWithValue(DatabaseConnectionService controllerDB) throws SQLException {
+        String replacement = replacementValue == null ? "" : replacementValue;
+        List<String> types = new ArrayList<>();
+        for (String column : namesColumn) {
+            String attributeType = tableInfoService.getAttributeType(nameTable, column);
+            boolean valid = switch (attributeType) {
+                case "integer", "bigint", "smallint", "real", "double precision", "numeric" ->
+                        replacement.matches(NUMBER_PATTERN);
+                case "date" -> isDate(replacement);
+                default -> true;
+            };
+            if (!valid) {
+                System.out.println("Replacement value does not match type of " + column + ".");
+                return;
+            }
+            types.add(attributeType);
         }
-        System.out.println("Deleted unique records.");
-    }
 
-    // n=2: Замена уникальных значений на NULL
-    private void replaceWithNone(
-            Map<String, List<Object>> uniqueRecords,
-            DatabaseConnectionService controllerDB)
-            throws SQLException {
-        for (List<Object> values : uniqueRecords.values()) {
-            String whereClause = buildWhereClause(values);
-            StringBuilder updateSQL = new StringBuilder("UPDATE " + nameTable + " SET ");
-            for (int i = 0; i < namesColumn.size(); i++) {
-                updateSQL.append(namesColumn.get(i)).append(" = NULL");
-                if (i < namesColumn.size() - 1) {
-                    updateSQL.append(", ");
+        try (PreparedStatement statement = controllerDB.getPrepareStatement(
+                "UPDATE " + nameTable + " SET " + assignments("?") + " WHERE " + rareRecords() + ";")) {
+            for (int i = 0; i < types.size(); i++) {
+                switch (types.get(i)) {
+                    case "integer", "bigint", "smallint" -> statement.setLong(i + 1, Math.round(Double.parseDouble(replacement)));
+                    case "real", "double precision", "numeric" -> statement.setDouble(i + 1, Double.parseDouble(replacement));
+                    case "date" -> statement.setObject(i + 1, LocalDate.parse(replacement));
+                    default -> statement.setObject(i + 1, replacement, Types.OTHER);
                 }
             }
-            updateSQL.append(" WHERE ").append(whereClause);
-
-            controllerDB.execute(updateSQL.toString());
+            statement.executeUpdate();
         }
-        System.out.println("Replaced unique values with NULL.");
     }
 
-    // n=3: Сглаживание значений
-    private Map<String, Object> getReplacementValues(
-            int smoothingOption,
-            String replacementValue,
-            DatabaseConnectionService controllerDB)
-            throws SQLException {
-
-        Map<String, Object> replacementValues = new HashMap<>();
-
-        if (smoothingOption == 1) {
-            for (String column : namesColumn) {
-                String attributeType = tableInfoService.getAttributeType(nameTable, column);
-                if (attributeType.equals("integer") || attributeType.equals("real")) {
-                    String sql =
-                            "SELECT AVG(CAST(" + column + " AS REAL)) AS avg_val FROM "
-                            + nameTable + " WHERE " + column + " IS NOT NULL";
-                    try (ResultSet rs = controllerDB.executeQuery(sql)) {
-                        if (rs.next()) {
-                            replacementValues.put(column, rs.getDouble("avg_val"));
-                        }
-                    }
-                } else if (attributeType.equals("date")) {
-                    String sql =
-                            """
-                                            SELECT (TO_TIMESTAMP(AVG(EXTRACT(EPOCH FROM %s))))::DATE AS avg_date
-                                            FROM %s
-                                            WHERE %s IS NOT NULL;
-                                    """.formatted(column, nameTable, column);
-                    try (ResultSet rs = controllerDB.executeQuery(sql)) {
-                        if (rs.next()) {
-                            replacementValues.put(column, rs.getDate("avg_date"));
-                        }
-                    }
-                }
-            }
-        } else if (smoothingOption == 2) { // Ввод вручную
-            for (String column : namesColumn) {
-                replacementValues.put(column, replacementValue);
+    // Среднее непустых значений в типе столбца (целые округляются, даты - вниз до дня); null для текста
+    private Object average(Column column) {
+        if (!(column instanceof IntColumn || column instanceof LongColumn
+              || column instanceof DoubleColumn || column instanceof DateColumn)) {
+            return null;
+        }
+        double sum = 0;
+        int count = 0;
+        for (int row = 0; row < column.size(); row++) {
+            if (!column.isNull(row)) {
+                sum += column.getDouble(row);
+                count++;
             }
         }
-        return replacementValues;
+        if (count == 0) {
+            return null;
+        }
+        double average = sum / count;
+        if (column instanceof DoubleColumn) {
+            return average;
+        }
+        return column instanceof DateColumn ? (long) Math.floor(average) : Math.round(average);
     }
 
-    private void updateUniqueValues(
-            DatabaseConnectionService controllerDB,
-            Map<String, List<Object>> uniqueRecords,
-            Map<String, Object> replacementValues) throws SQLException {
-        for (List<Object> values : uniqueRecords.values()) {
-            String whereClause = buildWhereClause(values);
-
-            StringBuilder updateSQL = new StringBuilder("UPDATE " + nameTable + " SET ");
-            int i = 0;
-            int counterBadUpdates = 0;
-            for (String column : namesColumn) {
-
-                updateSQL.append(column).append(" = ");
-                String replacement = replacementValues.get(column).toString();
-                String attributeType = tableInfoService.getAttributeType(nameTable, column);
-                switch (attributeType) {
-                    case "integer" -> {
-                        if (replacement.matches("^-?\\d+(\\.\\d+)?$")) {
-                            updateSQL.append(Math.round(Double.parseDouble(replacement)));
-                        } else {
-                            counterBadUpdates++;
-                        }
-                    }
-                    case "real" -> {
-                        if (replacement.matches("^-?\\d+(\\.\\d+)?$")) {
-                            updateSQL.append(Double.parseDouble(replacement));
-                        } else {
-                            counterBadUpdates++;
-                        }
-                    }
-                    case "date" -> {
-                        try {
-                            LocalDate.parse(replacement);
-                            updateSQL.append("'").append(replacement).append("'");
-                        } catch (DateTimeParseException e) {
-                            counterBadUpdates++;
-                        }
-                    }
-                    default -> updateSQL.append("'").append(replacement).append("'");
-                }
-                if (i < namesColumn.size() - 1) {
-                    updateSQL.append(", ");
-                }
-                i++;
-            }
-            updateSQL.append(" WHERE ").append(whereClause);
-            if (counterBadUpdates == 0) {
-                controllerDB.execute(updateSQL.toString());
-            }
+    // Введённое значение в типе столбца; null, если оно к типу не подходит
+    private Object typedValue(Column column, String replacement) {
+        if (column instanceof IntColumn || column instanceof LongColumn) {
+            return replacement.matches(NUMBER_PATTERN) ? Math.round(Double.parseDouble(replacement)) : null;
+        }
+        if (column instanceof DoubleColumn) {
+            return replacement.matches(NUMBER_PATTERN) ? Double.parseDouble(replacement) : null;
         }
-        System.out.println("Smoothed unique values.");
+        if (column instanceof DateColumn) {
+            return isDate(replacement) ? LocalDate.parse(replacement).toEpochDay() : null;
+        }
+        return replacement;
     }
 
-    // Вспомогательный метод для создания WHERE-условия
-    private String buildWhereClause(List<Object> values) {
-        StringBuilder where = new StringBuilder();
-        for (int i = 0; i < namesColumn.size(); i++) {
-            where.append(namesColumn.get(i));
-            if (values.get(i) == null) {
-                where.append(" IS NULL");
-            } else {
-                where.append(" = ");
-                if (values.get(i) instanceof Number) {
-                    where.append(values.get(i));
-                } else {
-                    where.append("'").append(values.get(i)).append("'");
-                }
+    // Столбец того же типа, в котором строки rows заменены значением value (null - NULL)
+    private static Column replaceRows(Column column, BitSet rows, Object value) {
+        int size = column.size();
+        BitSet nulls = column.copyNulls();
+        if (value == null) {
+            nulls.or(rows);
+        } else {
+            nulls.andNot(rows);
+        }
+        if (column instanceof IntColumn ints
+            && (value == null || (long) value == (int) (long) value)) {
+            int[] values = new int[size];
+            for (int row = 0; row < size; row++) {
+                values[row] = rows.get(row) ? (value == null ? 0 : (int) (long) value) : ints.getInt(row);
+            }
+            return new IntColumn(values, nulls, size);
+        }
+        if (column instanceof IntColumn || column instanceof LongColumn) {
+            long[] values = new long[size];
+            for (int row = 0; row < size; row++) {
+                values[row] = rows.get(row) ? (value == null ? 0 : (long) value)
+                        : column instanceof LongColumn longs ? longs.getLong(row) : ((IntColumn) column).getInt(row);
+            }
+            return new LongColumn(values, nulls, size);
+        }
+        if (column instanceof DoubleColumn) {
+            double[] values = new double[size];
+            for (int row = 0; row < size; row++) {
+                values[row] = rows.get(row) ? (value == null ? 0 : (double) value) : column.getDouble(row);
             }
-            if (i < namesColumn.size() - 1) {
-                where.append(" AND ");
+            return new DoubleColumn(values, nulls, size);
+        }
+        if (column instanceof DateColumn dates) {
+            int[] values = new int[size];
+            for (int row = 0; row < size; row++) {
+                values[row] = rows.get(row) ? (value == null ? 0 : (int) (long) value) : dates.getEpochDay(row);
             }
+            return new DateColumn(values, nulls, size);
         }
-        return where.toString();
+        ColumnBuilder builder = new ColumnBuilder();
+        for (int row = 0; row < size; row++) {
+            builder.add(rows.get(row) ? (value == null ? null : value.toString()) : column.getString(row));
+        }
+        return builder.build();
     }
 
-    private String getColumnsNameAsString(List<String> objects) {
-        var stringBuilder = new StringBuilder();
-        objects.forEach(object -> {
-            stringBuilder.append(object);
-            stringBuilder.append(", ");
-        });
-        return stringBuilder.substring(0, stringBuilder.lastIndexOf(","));
+    private boolean isDate(String value) {
+        try {
+            LocalDate.parse(value);
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
     }
 
 }
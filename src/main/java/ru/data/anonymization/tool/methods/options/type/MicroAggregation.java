@@ -2,27 +2,33 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.DoubleColumn;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MdavGrouping;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
 public class MicroAggregation implements MaskItem {
+    private static final long serialVersionUID = 7200866597402642133L;
+
     private String nameTable;
     private List<String> namesColumn;
     private int k;
 
-
-    private static final String nameFieldIsChange = "is_change_for_micro_aggregation";
     private static final String nameIdField = "temp_id_group_by_micro_aggregation";
 
-    private String columnsRow;
-    private String columnsRowCount;
-
     @Override
     public String getTable() {
         return nameTable;
@@ -35,149 +41,74 @@ public class MicroAggregation implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
-        int Xr;
-        int Xs;
-
-        columnsRow = convertStringArrayToString(namesColumn);
-        columnsRowCount = convertStringArrayToStringWithAVG(namesColumn);
-
-        controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + nameFieldIsChange + " INT DEFAULT 1;");
         controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + nameIdField + " INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY;");
 
-        int countRecords = findCountRecords(controllerDB);
-
-        while (countRecords >= 3 * k) {
+        int[] ids = new int[1024];
+        double[][] columns = new double[namesColumn.size()][1024];
+        int rows = 0;
 
-            Xr = squaredEuclideanDistance(controllerDB, findXc(controllerDB), true);
-            Xs = squaredEuclideanDistance(controllerDB, findById(controllerDB, Xr), true);
-
-            formGroupByX(controllerDB, findById(controllerDB, Xr));
-            formGroupByX(controllerDB, findById(controllerDB, Xs));
-            countRecords = findCountRecords(controllerDB);
+        ResultSet resultSet = controllerDB.executeQuery("select " + nameIdField + "," + String.join(",", namesColumn) + " from " + nameTable + ";");
+        while (resultSet.next()) {
+            if (rows == ids.length) {
+                ids = Arrays.copyOf(ids, rows * 2);
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = Arrays.copyOf(columns[i], rows * 2);
+                }
+            }
+            ids[rows] = resultSet.getInt(1);
+            for (int i = 0; i < columns.length; i++) {
+                double value = resultSet.getDouble(i + 2);
+                columns[i][rows] = resultSet.wasNull() ? Double.NaN : value;
+            }
+            rows++;
         }
+        resultSet.close();
 
-        if (countRecords < 3 * k && countRecords >= 2 * k) {
-            Xr = squaredEuclideanDistance(controllerDB, findXc(controllerDB), true);
-            formGroupByX(controllerDB, findById(controllerDB, Xr));
-            formGroupByAll(controllerDB);
-        } else if (countRecords < 2 * k) {
-            formGroupByAll(controllerDB);
-        }
+        int[] group = MdavGrouping.group(columns, rows, k);
+        double[][] means = MdavGrouping.means(columns, group);
 
+        writeMeans(controllerDB, ids, group, means, rows);
 
         controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameIdField + ";");
-        controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameFieldIsChange + ";");
-    }
-
-    private String convertStringArrayToString(List<String> strArr) {
-        StringBuilder sb = new StringBuilder();
-        for (String str : strArr)
-            sb.append(str).append(",");
-        return sb.substring(0, sb.length() - 1);
-    }
-
-    private String convertStringArrayToStringWithAVG(List<String> strArr) {
-        StringBuilder sb = new StringBuilder();
-        for (String str : strArr)
-            sb.append("AVG(").append(str).append("),");
-        return sb.substring(0, sb.length() - 1);
-    }
-
-    private int findCountRecords(DatabaseConnectionService controllerDB) throws SQLException {
-        ResultSet resultSet = controllerDB.executeQuery("select count(*) from " + nameTable + " where " + nameFieldIsChange + "=1;");
-        resultSet.next();
-        return resultSet.getInt(1);
-    }
-
-    private double[] findById(DatabaseConnectionService controllerDB, int id) throws SQLException {
-        double[] X = new double[namesColumn.size()];
-        ResultSet resultSet = controllerDB.executeQuery("select " + columnsRow + "," + nameIdField + " from " + nameTable + " where " + nameIdField + "=" + id + ";");
-        resultSet.next();
-        for (int i = 0; i < X.length; i++) {
-            X[i] = resultSet.getDouble(i + 1);
-        }
-        return X;
     }
 
-    private double[] findXc(DatabaseConnectionService controllerDB) throws SQLException {
-        double[] Xc = new double[namesColumn.size()];
-        ResultSet resultSet = controllerDB.executeQuery(
-                "select " + columnsRowCount + " from " + nameTable + " where " + nameFieldIsChange + "=1;"
-        );
-
-        resultSet.next();
-        for (int i = 0; i < Xc.length; i++) {
-            Xc[i] = resultSet.getDouble(i + 1);
-        }
-
-        return Xc;
-    }
-
-    private int squaredEuclideanDistance(DatabaseConnectionService controllerDB, double[] cur, boolean max) throws SQLException {
-        double mid;
-        if (max) {
-            mid = Double.MIN_VALUE;
-        } else {
-            mid = Double.MAX_VALUE;
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        int rows = table.getRowCount();
+        double[][] columns = new double[namesColumn.size()][];
+        for (int i = 0; i < columns.length; i++) {
+            Column column = MemoryColumns.column(table, namesColumn.get(i));
+            columns[i] = new double[rows];
+            for (int row = 0; row < rows; row++) {
+                columns[i][row] = column.isNull(row) ? Double.NaN : column.getDouble(row);
+            }
         }
-        double distance;
-        int idRow = -1;
-
-        ResultSet resultSet = controllerDB.executeQuery("select " + columnsRow + "," + nameIdField + "," + nameFieldIsChange + " from " + nameTable + " where " + nameFieldIsChange + "=1;");
 
-        while (resultSet.next()) {
+        int[] group = MdavGrouping.group(columns, rows, k);
+        double[][] means = MdavGrouping.means(columns, group);
 
-            distance = 0;
-            for (int i = 0; i < namesColumn.size(); i++) {
-                distance += (cur[i] - resultSet.getDouble(i + 1)) * (cur[i] - resultSet.getDouble(i + 1));
+        for (int i = 0; i < columns.length; i++) {
+            double[] values = columns[i];
+            for (int row = 0; row < rows; row++) {
+                values[row] = means[i][group[row]];
             }
-            if (max) {
-                if (mid < distance) {
-                    mid = distance;
-                    idRow = resultSet.getInt(namesColumn.size() + 1);
-                }
-            } else {
-                if (mid > distance) {
-                    mid = distance;
-                    idRow = resultSet.getInt(namesColumn.size() + 1);
-                }
-            }
-
+            table = table.withColumn(namesColumn.get(i), new DoubleColumn(values, new BitSet(), rows));
         }
-        return idRow;
+        tables.put(nameTable, table);
     }
 
-    private void setValueForGroup(DatabaseConnectionService controllerDB) throws SQLException {
-        double[] mean = new double[namesColumn.size()];
-        ResultSet resultSet = controllerDB.executeQuery("select " + columnsRowCount + " from " + nameTable + " where " + nameFieldIsChange + "=2;");
+    private void writeMeans(DatabaseConnectionService controllerDB, int[] ids, int[] group, double[][] means, int rows) throws SQLException {
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, nameIdField);
+        namesColumn.forEach(column -> update.column(column, "DOUBLE PRECISION"));
 
-        resultSet.next();
-        for (int i = 0; i < mean.length; i++) {
-            mean[i] = resultSet.getDouble(i + 1);
-        }
-
-        resultSet = controllerDB.executeQuery("select " + columnsRow + "," + nameIdField + "," + nameFieldIsChange + " from " + nameTable + " where " + nameFieldIsChange + "=2;");
-        while (resultSet.next()) {
-            for (int i = 0; i < mean.length; i++) {
-                resultSet.updateObject(i + 1, mean[i]);
+        Object[] values = new Object[namesColumn.size()];
+        for (int row = 0; row < rows; row++) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = means[i][group[row]];
             }
-            resultSet.updateInt(mean.length + 2, 0);
-            resultSet.updateRow();
+            update.add(ids[row], values);
         }
-    }
-
-    private void formGroupByX(DatabaseConnectionService controllerDB, double[] X) throws SQLException {
-        int id;
-        for (int i = 0; i < k; i++) {
-            id = squaredEuclideanDistance(controllerDB, X, false);
-            if (id == -1) break;
-            controllerDB.execute("UPDATE " + nameTable + " SET " + nameFieldIsChange + "=2" + " WHERE " + nameIdField + "=" + id);
-        }
-        setValueForGroup(controllerDB);
-    }
-
-    private void formGroupByAll(DatabaseConnectionService controllerDB) throws SQLException {
-        controllerDB.execute("UPDATE " + nameTable + " SET " + nameFieldIsChange + "=2" + " WHERE " + nameFieldIsChange + "=1;");
-        setValueForGroup(controllerDB);
+        update.apply();
     }
 }
@@ -2,16 +2,28 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.DoubleColumn;
+import ru.data.anonymization.tool.dto.column.StringColumn;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 import java.sql.ResultSet;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
 
 @Data
 @NoArgsConstructor
 public class MicroAggregationBySingleAxis implements MaskItem {
+    private static final long serialVersionUID = 3678578078288937758L;
+
     private String nameTable;
     private int k;
     private String axisColumn;
@@ -33,48 +45,76 @@ public class MicroAggregationBySingleAxis implements MaskItem {
         String columnsRow = convertStringArrayToString(namesColumn, ",");
 
         controllerDB.execute("ALTER TABLE "+nameTable+" ADD COLUMN "+nameIdField+" INT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY;");
-        ResultSet resultSet = controllerDB.executeQuery("select count(*) from "+nameTable+";");
-        resultSet.next();
-        int sizeTable = resultSet.getInt(1);
+        ResultSet resultSet = controllerDB.executeQuery("SELECT "+columnsRow+", "+nameIdField+" from "+nameTable+" ORDER BY "+axisColumn+";");
 
-        resultSet = controllerDB.executeQuery("SELECT "+columnsRow+", "+nameIdField+" from "+nameTable+" ORDER BY "+axisColumn+";");
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, nameIdField);
+        namesColumn.forEach(column -> update.column(column, "DOUBLE PRECISION"));
 
         int size = namesColumn.size();
-        int count = 1;
+        int count = 0;
         double[] sum = new double[size];
-        int curElem = 0;
-
-        for (int i = 1; i <= sizeTable; i++) {
-            resultSet.absolute(i);
+        int[] groupIds = new int[Math.max(k, 1)];
+        Object[] means = new Object[size];
 
+        boolean hasNext = resultSet.next();
+        while (hasNext) {
             for (int j = 0; j < size; j++) {
-                sum[j] += resultSet.getDouble( j + 1);
+                sum[j] += resultSet.getDouble(j + 1);
             }
+            groupIds[count++] = resultSet.getInt(size + 1);
+            hasNext = resultSet.next();
 
-            if(count == k || i == sizeTable){
+            if (count == groupIds.length || !hasNext) {
                 for (int j = 0; j < size; j++) {
-                    sum[j] /= count;
+                    means[j] = sum[j] / count;
                 }
-                curElem = i - count + 1;
-
-                for (int j = curElem; j <= i; j++) {
-                    resultSet.absolute(j);
-                    for (int l = 0; l < size; l++) {
-                        resultSet.updateObject(l+1, sum[l]);
-                    }
-                    resultSet.updateRow();
+                for (int j = 0; j < count; j++) {
+                    update.add(groupIds[j], means);
                 }
                 Arrays.fill(sum, 0);
-                count = 1;
-            }else{
-                count++;
-                curElem++;
+                count = 0;
             }
         }
+        update.apply();
 
         controllerDB.execute("ALTER TABLE "+nameTable+" DROP COLUMN "+nameIdField+";");
     }
 
+    // Строки упорядочиваются по оси так же, как ORDER BY: NULL в конце, затем делятся на группы по k
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        int rows = table.getRowCount();
+        Column axis = MemoryColumns.column(table, axisColumn);
+        Comparator<Integer> byValue = axis instanceof StringColumn
+                ? Comparator.comparing(axis::getString)
+                : Comparator.comparingDouble(axis::getDouble);
+        int[] order = IntStream.range(0, rows)
+                .boxed()
+                .sorted(Comparator.comparing((Integer row) -> axis.isNull(row)).thenComparing(byValue))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        int groupSize = Math.max(k, 1);
+        for (String name : namesColumn) {
+            Column column = MemoryColumns.column(table, name);
+            double[] values = new double[rows];
+            for (int from = 0; from < rows; from += groupSize) {
+                int to = Math.min(from + groupSize, rows);
+                double sum = 0;
+                for (int i = from; i < to; i++) {
+                    sum += column.isNull(order[i]) ? 0 : column.getDouble(order[i]);
+                }
+                double mean = sum / (to - from);
+                for (int i = from; i < to; i++) {
+                    values[order[i]] = mean;
+                }
+            }
+            table = table.withColumn(name, new DoubleColumn(values, new BitSet(), rows));
+        }
+        tables.put(nameTable, table);
+    }
+
     private String convertStringArrayToString(List<String> strArr, String delimiter) {
         StringBuilder sb = new StringBuilder();
         for (String str : strArr)
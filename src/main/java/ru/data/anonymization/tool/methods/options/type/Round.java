@@ -2,15 +2,27 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.DoubleColumn;
+import ru.data.anonymization.tool.dto.column.LongColumn;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
+import ru.data.anonymization.tool.methods.options.SqlFallback;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
 public class Round implements MaskItem {
+    private static final long serialVersionUID = -8667794653523680791L;
 
     private String nameTable;
     private String nameColumn;
@@ -28,20 +40,64 @@ public class Round implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        String rounded = precision == 0
+                ? "trunc(" + nameColumn + "::NUMERIC)"
+                : "round(" + nameColumn + "::NUMERIC, " + precision + ")";
+        try {
+            controllerDB.execute("UPDATE " + nameTable + " SET " + nameColumn + " = " + rounded + ";");
+        } catch (SQLException e) {
+            if (!SqlFallback.isTypeOrSyntaxError(e)) {
+                throw e;
+            }
+            startByRows(controllerDB);
+        }
+    }
+
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        Column column = MemoryColumns.column(table, nameColumn);
+        Column rounded;
+        if (precision == 0) {
+            long[] values = new long[column.size()];
+            for (int row = 0; row < values.length; row++) {
+                if (!column.isNull(row)) {
+                    values[row] = (long) column.getDouble(row);
+                }
+            }
+            rounded = new LongColumn(values, column.copyNulls(), column.size());
+        } else {
+            double[] values = new double[column.size()];
+            for (int row = 0; row < values.length; row++) {
+                if (!column.isNull(row)) {
+                    values[row] = BigDecimal.valueOf(column.getDouble(row))
+                            .setScale(precision, RoundingMode.HALF_UP)
+                            .doubleValue();
+                }
+            }
+            rounded = new DoubleColumn(values, column.copyNulls(), column.size());
+        }
+        tables.put(nameTable, table.withColumn(nameColumn, rounded));
+    }
+
+    // Построчный вариант для столбцов, которые нельзя привести к NUMERIC на стороне БД
+    private void startByRows(DatabaseConnectionService controllerDB) throws Exception {
         controllerDB.execute("ALTER TABLE " + nameTable
                              + " ADD COLUMN masking_method_temp_id INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
         ResultSet resultSet = controllerDB.executeQuery(
                 "SELECT " + nameColumn + ", masking_method_temp_id FROM " + nameTable + ";");
 
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, "masking_method_temp_id")
+                .column(nameColumn, "DOUBLE PRECISION");
         double cur;
         while (resultSet.next()) {
             cur = resultSet.getDouble(1);
             cur = precision == 0 ? Double.valueOf((int) cur) :
                     Double.parseDouble(String.format("%." + precision + "f", cur)
                                              .replace(',', '.'));
-            resultSet.updateObject(1, cur);
-            resultSet.updateRow();
+            update.add(resultSet.getInt(2), cur);
         }
+        update.apply();
 
         controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN masking_method_temp_id;");
     }
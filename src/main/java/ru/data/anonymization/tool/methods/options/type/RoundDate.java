@@ -1,14 +1,21 @@
 package ru.data.anonymization.tool.methods.options.type;
 
+import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 @Data
 @NoArgsConstructor
 public class RoundDate implements MaskItem {
+    private static final long serialVersionUID = 3110145421968997672L;
 
     private String nameTable;
     private String nameColumn;
@@ -26,6 +33,27 @@ public class RoundDate implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        String typeFor = truncUnit();
+        var sqlExpression =
+                "update " + nameTable + " set " + nameColumn + " =  date_trunc( '" + typeFor
+                + "'," + nameColumn + ")::date where " + nameColumn + " is not null;";
+        controllerDB.execute(sqlExpression);
+    }
+
+    // Результат приводится к дате, поэтому усечение до часа, минуты или секунды дату не меняет
+    @Override
+    public void start(Map<String, TableData> tables) throws Exception {
+        UnaryOperator<LocalDate> trunc = switch (truncUnit()) {
+            case "month" -> date -> date.withDayOfMonth(1);
+            case "year" -> date -> date.withDayOfYear(1);
+            default -> date -> date;
+        };
+        TableData table = MemoryColumns.table(tables, nameTable);
+        Column column = MemoryColumns.column(table, nameColumn);
+        tables.put(nameTable, table.withColumn(nameColumn, MemoryColumns.mapDates(column, trunc)));
+    }
+
+    private String truncUnit() throws Exception {
         String typeFor = switch (type) {
             case "yyyy/MM/dd hh:mm:ss" -> "second";
             case "yyyy/MM/dd hh:mm" -> "minute";
@@ -35,17 +63,9 @@ public class RoundDate implements MaskItem {
             case "yyyy" -> "year";
             default -> null;
         };
-
-        if (typeFor != null) {
-
-            var sqlExpression =
-                    "update " + nameTable + " set " + nameColumn + " =  date_trunc( '" + typeFor
-                    + "'," + nameColumn + ")::date where " + nameColumn + " is not null;";
-            controllerDB.execute(sqlExpression);
-        } else {
+        if (typeFor == null) {
             throw new Exception("Тип не задан!");
         }
+        return typeFor;
     }
-
-
 }
@@ -1,27 +1,43 @@
 package ru.data.anonymization.tool.methods.options.type;
 
-import java.sql.ResultSet;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.StringColumn;
 import ru.data.anonymization.tool.methods.options.MaskItem;
-import ru.data.anonymization.tool.methods.options.type.ValueVariance.DataType;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
-import ru.data.anonymization.tool.service.TableInfoService;
+import ru.data.anonymization.tool.util.RowSampler;
 
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
-@Slf4j
 public class SelectionMethod implements MaskItem {
+    private static final long serialVersionUID = -375974623232535554L;
 
     private String nameTable;
     private String nameColumn;
     private int percent;
+    // Способ выборки, null - случайная выборка строк
+    private Sampling sampling;
+    // Зерно генератора; задаётся при первом запуске и сохраняется в конфигурации для воспроизводимости
+    private Long seed;
+
+    public enum Sampling {
+        // Ровно percent% строк таблицы
+        RANDOM,
+        // percent% строк в каждой группе значений атрибута
+        STRATIFIED,
+        // Каждая строка остаётся с вероятностью percent% (TABLESAMPLE BERNOULLI), размер приблизительный
+        TABLESAMPLE
+    }
 
     @Override
     public String getTable() {
@@ -33,44 +49,81 @@ public class SelectionMethod implements MaskItem {
         return List.of(nameColumn);
     }
 
-
-
+    // Удаляются строки, не попавшие в выборку; генератор random() задаётся зерном через setseed
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
-        log.info("TUT");
-        List<Object> objects = new ArrayList<>();
-        String sql = "SELECT %1$s FROM %2$s;".formatted(nameColumn, nameTable);
-        var resultSet = controllerDB.executeQuery(sql);
-        try (resultSet) {
-            while (resultSet.next()) {
-                Object object = resultSet.getObject(1);
-                if (object != null) {
-                    objects.add(object);
-                }
+        double seedValue = new SplittableRandom(seed()).nextDouble() * 2 - 1;
+        String removed = switch (sampling()) {
+            case RANDOM -> "SELECT ctid FROM " + nameTable + " ORDER BY random() OFFSET (SELECT round(count(*) * "
+                           + percent + " / 100.0)::BIGINT FROM " + nameTable + ")";
+            case STRATIFIED -> "SELECT ctid FROM (SELECT ctid, row_number() OVER (PARTITION BY " + nameColumn
+                               + " ORDER BY random()) AS rn, count(*) OVER (PARTITION BY " + nameColumn
+                               + ") AS stratum_size FROM " + nameTable + ") strata WHERE rn > round(stratum_size * "
+                               + percent + " / 100.0)";
+            case TABLESAMPLE -> "SELECT ctid FROM " + nameTable + " TABLESAMPLE BERNOULLI (" + (100 - percent)
+                                + ") REPEATABLE (" + seedValue + ")";
+        };
+        controllerDB.execute("SELECT setseed(" + seedValue + ");");
+        controllerDB.execute("DELETE FROM " + nameTable + " WHERE ctid = ANY(ARRAY(" + removed + "));");
+    }
+
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        int size = table.getRowCount();
+        SplittableRandom random = new SplittableRandom(seed());
+        BitSet selected = switch (sampling()) {
+            case RANDOM -> RowSampler.select(size, RowSampler.sampleSize(size, percent), random);
+            case STRATIFIED -> {
+                Column column = MemoryColumns.column(table, nameColumn);
+                int[] strata = new int[size];
+                int strataCount = strata(column, strata);
+                yield RowSampler.selectStratified(strata, strataCount, percent, random);
             }
-        }
+            case TABLESAMPLE -> RowSampler.bernoulli(size, percent, random);
+        };
+        tables.put(nameTable, table.select(selected.stream().toArray()));
+    }
+
+    private Sampling sampling() {
+        return sampling == null ? Sampling.RANDOM : sampling;
+    }
 
-        Collections.shuffle(objects);
-        int newSize = (int) Math.round ((objects.size() * (double) percent) / 100);
-        List<Object> selectionObject = new ArrayList<>();
-        for (int i = 0; i < newSize; i++) {
-            selectionObject.add(objects.get(i));
+    private long seed() {
+        if (seed == null) {
+            seed = new SplittableRandom().nextLong();
         }
-        sql = "DELETE FROM %1$s WHERE %2$s NOT IN (%3$S);".formatted(
-                nameTable,
-                nameColumn,
-                objectsToString(selectionObject)
-        );
-        controllerDB.execute(sql);
+        return seed;
     }
 
-    private String objectsToString(List<Object> objects) {
-        var stringBuilder = new StringBuilder();
-        objects.forEach(object -> {
-            stringBuilder.append(object);
-            stringBuilder.append(", ");
-        });
-        return stringBuilder.substring(0, stringBuilder.lastIndexOf(","));
+    // Номер группы значения для каждой строки; NULL - отдельная группа. Возвращает число групп.
+    // Группы строятся по значениям: после замены словаря (withDictionary) разные коды могут давать одно значение
+    private int strata(Column column, int[] strata) {
+        Map<String, Integer> codes = new HashMap<>();
+        if (column instanceof StringColumn strings) {
+            List<String> dictionary = strings.getDictionary();
+            int[] byCode = new int[dictionary.size()];
+            for (int code = 0; code < byCode.length; code++) {
+                byCode[code] = codes.computeIfAbsent(dictionary.get(code), key -> codes.size());
+            }
+            int nullStratum = -1;
+            for (int row = 0; row < strata.length; row++) {
+                if (!strings.isNull(row)) {
+                    strata[row] = byCode[strings.getCode(row)];
+                } else {
+                    if (nullStratum < 0) {
+                        nullStratum = codes.computeIfAbsent(null, key -> codes.size());
+                    }
+                    strata[row] = nullStratum;
+                }
+            }
+            return codes.size();
+        }
+        for (int row = 0; row < strata.length; row++) {
+            String value = column.isNull(row) ? null : column.getString(row);
+            strata[row] = codes.computeIfAbsent(value, key -> codes.size());
+        }
+        return codes.size();
     }
 
 }
@@ -1,24 +1,32 @@
 package ru.data.anonymization.tool.methods.options.type;
 
-import java.sql.SQLException;
 import lombok.Data;
 import lombok.NoArgsConstructor;
-import lombok.extern.slf4j.Slf4j;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.IntColumn;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
+import ru.data.anonymization.tool.methods.options.CopyBuffer;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 import java.sql.ResultSet;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
 
 @Data
 @NoArgsConstructor
-@Slf4j
 public class Shuffle implements MaskItem {
+    private static final long serialVersionUID = 4809888829307931876L;
 
     private String nameTable;
     private List<String> namesColumn;
+    // Зерно генератора для воспроизводимого перемешивания, null - случайное
+    private Long seed;
 
     @Override
     public String getTable() {
@@ -30,92 +38,103 @@ public class Shuffle implements MaskItem {
         return namesColumn;
     }
 
-    private String convertListToString(List<String> strArr, String delimiter) {
-        StringBuilder sb = new StringBuilder();
-        for (String str : strArr) {
-            sb.append(str).append(delimiter);
-        }
-        return sb.substring(0, sb.length() - 1);
-    }
-
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        SplittableRandom random = createRandom();
+        String nameIdField = "masking_id_for_shuffle";
         for (String columnsRow : namesColumn) {
             String newNameTable = "mixing_instructions_" + columnsRow;
-            List<Integer> oldPosition = new ArrayList<>();
-            List<Integer> newPosition = new ArrayList<>();
 
             controllerDB.execute("CREATE TABLE " + newNameTable
                                  + " (id SERIAL PRIMARY KEY,old_position INT,new_position INT);");
-            controllerDB.execute("ALTER TABLE " + nameTable
-                                 + " ADD COLUMN masking_id_for_shuffle INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
-            ResultSet resultSet = controllerDB.executeQuery(
-                    "select count(*) from " + nameTable + ";");
-            resultSet.next();
-            int sizeTable = resultSet.getInt(1);
-            resultSet = controllerDB.executeQuery(
-                    "select " + columnsRow + ",masking_id_for_shuffle from " + nameTable + ";");
+            controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN " + nameIdField
+                                 + " INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
 
+            int[] ids = new int[1024];
+            String[] values = new String[1024];
+            int size = 0;
+            ResultSet resultSet = controllerDB.executeQuery(
+                    "select " + nameIdField + ", " + columnsRow + " from " + nameTable
+                    + " order by " + nameIdField + ";");
             while (resultSet.next()) {
-                for (int k = 1; k <= 2; k++) {
-                    log.debug(resultSet.getString(k));
+                if (size == ids.length) {
+                    ids = Arrays.copyOf(ids, size * 2);
+                    values = Arrays.copyOf(values, size * 2);
                 }
+                ids[size] = resultSet.getInt(1);
+                values[size] = resultSet.getString(2);
+                size++;
             }
-            resultSet.beforeFirst();
-            shuffling(sizeTable, resultSet, oldPosition, newPosition);
-            controllerDB.execute(
-                    "ALTER TABLE " + nameTable + " DROP COLUMN masking_id_for_shuffle;");
-
-            for (int j = 0; j < oldPosition.size(); j++) {
-                controllerDB.execute(
-                        "INSERT INTO " + newNameTable + " (old_position,new_position) values("
-                        + oldPosition.get(j) + ", " + newPosition.get(j) + ");");
-            }
-        }
+            resultSet.close();
 
-    }
-
-    private void shuffling(
-            int sizeTable,
-            ResultSet resultSet,
-            List<Integer> oldPosition,
-            List<Integer> newPosition) throws SQLException {
-        int cur;
-        Object buf1;
-        Object buf2;
-        Random random = new Random();
-        for (int i = sizeTable; i >= 2; i--) {
-            cur = random.nextInt(i - 1) + 1;
-            log.debug(String.valueOf(cur));
+            Permutation permutation = shuffling(size, random);
 
-            for (int j = 1; j < 2; j++) {
-                resultSet.absolute(cur);
-                buf1 = resultSet.getObject(j);
+            BulkUpdate update = new BulkUpdate(controllerDB, nameTable, nameIdField).column(columnsRow);
+            for (int i = 0; i < size; i++) {
+                update.add(ids[i], values[permutation.order[i]]);
+            }
+            update.apply();
+            controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameIdField + ";");
 
-                resultSet.absolute(i);
-                buf2 = resultSet.getObject(j);
+            CopyBuffer instructions = new CopyBuffer(controllerDB, newNameTable, List.of("old_position", "new_position"));
+            for (int j = 0; j < permutation.oldPosition.length; j++) {
+                instructions.add(permutation.oldPosition[j], permutation.newPosition[j]);
+            }
+            instructions.finish();
+        }
+    }
 
-                resultSet.updateObject(j, buf1);
-                resultSet.updateRow();
+    @Override
+    public void start(Map<String, TableData> tables) {
+        SplittableRandom random = createRandom();
+        for (String columnsRow : namesColumn) {
+            TableData table = MemoryColumns.table(tables, nameTable);
+            Column column = MemoryColumns.column(table, columnsRow);
+            Permutation permutation = shuffling(column.size(), random);
+            tables.put(nameTable, table.withColumn(columnsRow, column.select(permutation.order)));
+
+            int count = permutation.oldPosition.length;
+            int[] ids = new int[count];
+            for (int i = 0; i < count; i++) {
+                ids[i] = i + 1;
+            }
+            String newNameTable = "mixing_instructions_" + columnsRow;
+            tables.put(newNameTable, TableData.ofColumns(
+                    newNameTable,
+                    List.of("id", "old_position", "new_position"),
+                    List.of(new IntColumn(ids, new BitSet(), count),
+                            new IntColumn(permutation.oldPosition, new BitSet(), count),
+                            new IntColumn(permutation.newPosition, new BitSet(), count))
+            ));
+        }
+    }
 
-                resultSet.absolute(cur);
-                resultSet.updateObject(j, buf2);
-                resultSet.updateRow();
+    private SplittableRandom createRandom() {
+        return seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+    }
 
-                oldPosition.add(cur);
-                newPosition.add(i);
-            }
-            resultSet.beforeFirst();
-            log.info("{old id : {}, new id : {}}", cur, i);
-            int count = 1;
-            while (resultSet.next()) {
-                for (int k = 1; k < 2; k++) {
-                    log.info("{} , {}", resultSet.getString(k), count);
-                }
-                count++;
-            }
-            resultSet.beforeFirst();
+    // Фишер-Йетс по позициям с 1: позиция i меняется местами со случайной позицией cur < i.
+    // order[p] - индекс строки, значение которой попадает в позицию p
+    private Permutation shuffling(int sizeTable, SplittableRandom random) {
+        int[] order = new int[sizeTable];
+        for (int i = 0; i < sizeTable; i++) {
+            order[i] = i;
         }
+        int swaps = Math.max(sizeTable - 1, 0);
+        int[] oldPosition = new int[swaps];
+        int[] newPosition = new int[swaps];
+        int count = 0;
+        for (int i = sizeTable; i >= 2; i--) {
+            int cur = random.nextInt(i - 1) + 1;
+            int buf = order[cur - 1];
+            order[cur - 1] = order[i - 1];
+            order[i - 1] = buf;
+            oldPosition[count] = cur;
+            newPosition[count++] = i;
+        }
+        return new Permutation(order, oldPosition, newPosition);
     }
 
+    private record Permutation(int[] order, int[] oldPosition, int[] newPosition) {
+    }
 }
@@ -2,15 +2,27 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.StringColumn;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
+import ru.data.anonymization.tool.methods.options.SqlFallback;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 
 @Data
 @NoArgsConstructor
 public class ValueReplacement implements MaskItem {
+    private static final long serialVersionUID = -1778816081411085506L;
+
     private String nameTable;
     private String nameColumn;
     private Object value;
@@ -27,12 +39,40 @@ public class ValueReplacement implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        // Значение передаётся без типа, PostgreSQL приводит его к типу столбца
+        try (PreparedStatement statement = controllerDB.getPrepareStatement(
+                "UPDATE " + nameTable + " SET " + nameColumn + " = ?;")) {
+            statement.setObject(1, value == null ? null : value.toString(), Types.OTHER);
+            statement.executeUpdate();
+        } catch (SQLException e) {
+            if (!SqlFallback.isTypeOrSyntaxError(e)) {
+                throw e;
+            }
+            startByRows(controllerDB);
+        }
+    }
+
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        int size = table.getRowCount();
+        BitSet nulls = new BitSet(size);
+        if (value == null) {
+            nulls.set(0, size);
+        }
+        List<String> dictionary = value == null ? List.of() : List.of(value.toString());
+        StringColumn replaced = new StringColumn(dictionary, new int[size], nulls, size);
+        tables.put(nameTable, table.withColumn(nameColumn, replaced));
+    }
+
+    private void startByRows(DatabaseConnectionService controllerDB) throws Exception {
         controllerDB.execute("ALTER TABLE " + nameTable + " ADD COLUMN masking_method_temp_id INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
         ResultSet resultSet = controllerDB.executeQuery("SELECT " + nameColumn + ",masking_method_temp_id FROM " + nameTable + ";");
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, "masking_method_temp_id").column(nameColumn);
         while (resultSet.next()) {
-            resultSet.updateObject(1, value);
-            resultSet.updateRow();
+            update.add(resultSet.getInt(2), value);
         }
+        update.apply();
         controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN masking_method_temp_id;");
     }
 }
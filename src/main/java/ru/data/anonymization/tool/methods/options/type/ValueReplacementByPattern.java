@@ -2,21 +2,40 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
+import ru.data.anonymization.tool.methods.options.SqlFallback;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
 
 @Data
 @NoArgsConstructor
 public class ValueReplacementByPattern implements MaskItem {
+    private static final long serialVersionUID = -7449303788966763559L;
 
     private String nameTable;
     private String nameColumn;
     private String regex;
     private String replacement;
 
+    // Конструкции Java regex, которых нет в регулярных выражениях PostgreSQL (ARE) или которые работают иначе:
+    // в ARE \b и \B - забой и обратная косая черта (граница слова - \y), \Z - только самый конец строки
+    private static final List<String> JAVA_ONLY_CONSTRUCTS = List.of(
+            "(?<", "(?>", "(?i", "(?m", "(?s", "(?u", "(?x", "(?d",
+            "*+", "++", "?+", "}+", "&&",
+            "\\p{", "\\P{", "\\h", "\\H", "\\R", "\\Q", "\\E", "\\z", "\\G", "\\X", "\\k<",
+            "\\b", "\\B", "\\A", "\\Z"
+    );
+
     @Override
     public String getTable() {
         return nameTable;
@@ -29,20 +48,143 @@ public class ValueReplacementByPattern implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        String sqlReplacement = toSqlReplacement(replacement);
+        if (sqlReplacement != null && isPortable(regex)) {
+            // Флаг p: точка не совпадает с переводом строки, как в Java
+            try (PreparedStatement statement = controllerDB.getPrepareStatement(
+                    "UPDATE " + nameTable + " SET " + nameColumn + " = regexp_replace(" + nameColumn
+                    + ", ?, ?, 'gp') WHERE " + nameColumn + " IS NOT NULL;")) {
+                statement.setString(1, regex);
+                statement.setString(2, sqlReplacement);
+                statement.executeUpdate();
+                return;
+            } catch (SQLException e) {
+                if (!SqlFallback.isTypeOrSyntaxError(e)) {
+                    throw e;
+                }
+            }
+        }
+        startByRows(controllerDB);
+    }
+
+    // Значения, к которым замену применить не удалось, остаются без изменений, как и в построчном варианте
+    @Override
+    public void start(Map<String, TableData> tables) {
+        Pattern pattern = Pattern.compile(regex);
+        TableData table = MemoryColumns.table(tables, nameTable);
+        Column column = MemoryColumns.column(table, nameColumn);
+        Column replaced = MemoryColumns.mapStrings(column, value -> {
+            try {
+                return pattern.matcher(value).replaceAll(replacement);
+            } catch (RuntimeException e) {
+                return value;
+            }
+        });
+        tables.put(nameTable, table.withColumn(nameColumn, replaced));
+    }
+
+    private boolean isPortable(String pattern) {
+        if (pattern == null) {
+            return false;
+        }
+        return JAVA_ONLY_CONSTRUCTS.stream().noneMatch(pattern::contains) && !mixesGreediness(pattern);
+    }
+
+    // В ARE жадность всего выражения задаёт первый квантификатор, поэтому смесь ленивых и жадных
+    // квантификаторов (\d+?-\d+, a+?b*) даёт другой результат, чем String.replaceAll
+    private static boolean mixesGreediness(String pattern) {
+        boolean lazy = false;
+        boolean greedy = false;
+        boolean inClass = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\\') {
+                i++;
+                continue;
+            }
+            if (inClass) {
+                inClass = c != ']';
+                continue;
+            }
+            if (c == '[') {
+                inClass = true;
+                continue;
+            }
+            if (c == '(' && i + 1 < pattern.length() && pattern.charAt(i + 1) == '?') {
+                i++;
+                continue;
+            }
+            int end = -1;
+            if (c == '*' || c == '+' || c == '?') {
+                end = i;
+            } else if (c == '{') {
+                int close = pattern.indexOf('}', i);
+                if (close > 0 && pattern.substring(i + 1, close).matches("\\d+(,\\d*)?")) {
+                    end = close;
+                }
+            }
+            if (end < 0) {
+                continue;
+            }
+            if (end + 1 < pattern.length() && pattern.charAt(end + 1) == '?') {
+                lazy = true;
+                end++;
+            } else {
+                greedy = true;
+            }
+            i = end;
+        }
+        return lazy && greedy;
+    }
+
+    // Замена в стиле String.replaceAll ($1, \$) переводится в формат regexp_replace (\1, $0 - \&).
+    // regexp_replace знает только группы \1-\9, поэтому $12 и именованные группы заменяются построчно
+    private String toSqlReplacement(String javaReplacement) {
+        if (javaReplacement == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < javaReplacement.length(); i++) {
+            char c = javaReplacement.charAt(i);
+            if (c == '\\') {
+                if (++i == javaReplacement.length()) {
+                    return null;
+                }
+                char escaped = javaReplacement.charAt(i);
+                sb.append(escaped == '\\' ? "\\\\" : String.valueOf(escaped));
+            } else if (c == '$') {
+                if (++i == javaReplacement.length() || !Character.isDigit(javaReplacement.charAt(i))) {
+                    return null;
+                }
+                if (i + 1 < javaReplacement.length() && Character.isDigit(javaReplacement.charAt(i + 1))) {
+                    return null;
+                }
+                char group = javaReplacement.charAt(i);
+                sb.append('\\').append(group == '0' ? '&' : group);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private void startByRows(DatabaseConnectionService controllerDB) throws Exception {
         controllerDB.execute("ALTER TABLE " + nameTable
                              + " ADD COLUMN masking_method_temp_id INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
         ResultSet resultSet = controllerDB.executeQuery(
                 "SELECT " + nameColumn + ", masking_method_temp_id FROM " + nameTable + ";");
 
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, "masking_method_temp_id").column(nameColumn);
         String newValue;
         while (resultSet.next()) {
             try {
                 newValue = resultSet.getString(1).replaceAll(regex, replacement);
-                resultSet.updateString(1, newValue);
-                resultSet.updateRow();
             } catch (Exception ignored) {
+                continue;
             }
+            update.add(resultSet.getInt(2), newValue);
         }
+        update.apply();
         controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN masking_method_temp_id;");
     }
 
@@ -2,20 +2,29 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.StringColumn;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 @Data
 @NoArgsConstructor
 public class ValueReplacementFromFile implements MaskItem {
+    private static final long serialVersionUID = -7596187522438214497L;
+
     private String nameTable;
     private String nameColumn;
     private String nameFile;
@@ -32,28 +41,44 @@ public class ValueReplacementFromFile implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
-        ArrayList<String> list = new ArrayList<>();
-        File file = new File(nameFile);
-
-        FileReader fr;
-        BufferedReader reader;
-        fr = new FileReader(file);
-        reader = new BufferedReader(fr);
-        String line = reader.readLine();
-        while (line != null) {
-            list.add(line);
-            line = reader.readLine();
-        }
+        List<String> list = readValues();
 
         controllerDB.execute("ALTER TABLE "+nameTable+" ADD COLUMN masking_method_temp_id INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
         ResultSet resultSet = controllerDB.executeQuery("SELECT "+nameColumn+", masking_method_temp_id FROM "+nameTable+";");
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, "masking_method_temp_id").column(nameColumn);
         Random random = new Random();
         int cur;
         while(resultSet.next()){
             cur = random.nextInt(list.size());
-            resultSet.updateObject(1, list.get(cur));
-            resultSet.updateRow();
+            update.add(resultSet.getInt(2), list.get(cur));
         }
+        update.apply();
         controllerDB.execute("ALTER TABLE "+nameTable+" DROP COLUMN masking_method_temp_id;");
     }
+
+    // Значения из файла становятся словарём столбца, строкам назначаются случайные коды
+    @Override
+    public void start(Map<String, TableData> tables) throws Exception {
+        List<String> list = readValues();
+        TableData table = MemoryColumns.table(tables, nameTable);
+        int size = table.getRowCount();
+        int[] codes = new int[size];
+        Random random = new Random();
+        for (int row = 0; row < size; row++) {
+            codes[row] = random.nextInt(list.size());
+        }
+        tables.put(nameTable, table.withColumn(nameColumn, new StringColumn(list, codes, new BitSet(), size)));
+    }
+
+    private List<String> readValues() throws IOException {
+        ArrayList<String> list = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(new File(nameFile)))) {
+            String line = reader.readLine();
+            while (line != null) {
+                list.add(line);
+                line = reader.readLine();
+            }
+        }
+        return list;
+    }
 }
@@ -2,22 +2,37 @@ package ru.data.anonymization.tool.methods.options.type;
 
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.dto.column.Column;
+import ru.data.anonymization.tool.dto.column.DoubleColumn;
+import ru.data.anonymization.tool.dto.column.LongColumn;
+import ru.data.anonymization.tool.methods.options.BulkUpdate;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.MemoryColumns;
+import ru.data.anonymization.tool.methods.options.NoiseGenerator;
+import ru.data.anonymization.tool.methods.options.NoiseGenerator.Distribution;
 import ru.data.anonymization.tool.service.DatabaseConnectionService;
 
-import java.sql.Date;
 import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
 
 @Data
 @NoArgsConstructor
 public class ValueVariance implements MaskItem {
+    private static final long serialVersionUID = 8868016808902434762L;
 
     private String nameTable;
     private String nameColumn;
     private int sigma;
     private DataType dataType;
+    // Распределение шума, null - нормальное (конфигурации, сохранённые до появления поля)
+    private Distribution distribution;
+    // Зерно генератора; задаётся при первом запуске и сохраняется в конфигурации для воспроизводимости
+    private Long seed;
 
     public enum DataType {
         INTEGER, FLOAT, DATE
@@ -35,51 +50,106 @@ public class ValueVariance implements MaskItem {
 
     @Override
     public void start(DatabaseConnectionService controllerDB) throws Exception {
+        String nameIdField = "masking_method_temp_id";
         controllerDB.execute("ALTER TABLE " + nameTable
-                             + " ADD COLUMN masking_method_temp_id INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
+                             + " ADD COLUMN " + nameIdField + " INT GENERATED BY DEFAULT AS IDENTITY UNIQUE;");
         ResultSet resultSet = controllerDB.executeQuery(
-                "SELECT " + nameColumn + ", masking_method_temp_id FROM " + nameTable + ";");
-        Random random = new Random();
+                "SELECT " + nameIdField + ", " + nameColumn + " FROM " + nameTable
+                + " WHERE " + nameColumn + " IS NOT NULL ORDER BY " + nameIdField + ";");
+
+        int size = 0;
+        int[] ids = new int[1024];
+        long[] longs = dataType == DataType.INTEGER ? new long[1024] : null;
+        double[] doubles = dataType == DataType.FLOAT ? new double[1024] : null;
+        int[] epochDays = dataType == DataType.DATE ? new int[1024] : null;
+        while (resultSet.next()) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                longs = longs == null ? null : Arrays.copyOf(longs, size * 2);
+                doubles = doubles == null ? null : Arrays.copyOf(doubles, size * 2);
+                epochDays = epochDays == null ? null : Arrays.copyOf(epochDays, size * 2);
+            }
+            ids[size] = resultSet.getInt(1);
+            switch (dataType) {
+                case INTEGER -> longs[size] = resultSet.getLong(2);
+                case FLOAT -> doubles[size] = resultSet.getDouble(2);
+                case DATE -> epochDays[size] = (int) resultSet.getDate(2).toLocalDate().toEpochDay();
+            }
+            size++;
+        }
+        resultSet.close();
+
+        double[] noise = noise(size);
+        BulkUpdate update = new BulkUpdate(controllerDB, nameTable, nameIdField);
         switch (dataType) {
             case INTEGER -> {
-                while (resultSet.next()) {
-                    int cur = resultSet.getInt(1);
-                    int per = (int)random.nextGaussian() * sigma;
-                    resultSet.updateInt(1, cur + per);
-                    resultSet.updateRow();
+                update.column(nameColumn);
+                for (int i = 0; i < size; i++) {
+                    update.add(ids[i], longs[i] + Math.round(noise[i]));
                 }
             }
             case FLOAT -> {
-                while (resultSet.next()) {
-                    double cur = resultSet.getDouble(1);
-                    double per = random.nextGaussian() * sigma;
-                    resultSet.updateDouble(1, cur + per);
-                    resultSet.updateRow();
+                update.column(nameColumn, "DOUBLE PRECISION");
+                for (int i = 0; i < size; i++) {
+                    update.add(ids[i], doubles[i] + noise[i]);
                 }
             }
             case DATE -> {
-                while (resultSet.next()) {
-                    Date cur = resultSet.getDate(1);
-                    if (cur == null) {
-                        continue;
-                    }
-                    int per = (int)random.nextGaussian() * sigma;
-                    int day = cur.toLocalDate().getDayOfMonth();
-                    int month = cur.toLocalDate().getMonthValue();
-
-                    day -= day - ((day * per) / 100);
-                    month -= month - ((month * per) / 100);
-                    resultSet.updateDate(1,
-                                         Date.valueOf(cur.toLocalDate()
-                                                         .plusDays(day)
-                                                         .plusMonths(month))
-                    );
-                    resultSet.updateRow();
+                update.column(nameColumn);
+                for (int i = 0; i < size; i++) {
+                    update.add(ids[i], shiftDate(LocalDate.ofEpochDay(epochDays[i]), Math.round(noise[i])));
                 }
             }
         }
+        update.apply();
 
-        controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN masking_method_temp_id;");
+        controllerDB.execute("ALTER TABLE " + nameTable + " DROP COLUMN " + nameIdField + ";");
     }
 
+    @Override
+    public void start(Map<String, TableData> tables) {
+        TableData table = MemoryColumns.table(tables, nameTable);
+        Column column = MemoryColumns.column(table, nameColumn);
+        double[] noise = noise(column.size());
+        Column changed = switch (dataType) {
+            case INTEGER -> {
+                long[] values = new long[column.size()];
+                for (int row = 0; row < values.length; row++) {
+                    if (!column.isNull(row)) {
+                        values[row] = (long) column.getDouble(row) + Math.round(noise[row]);
+                    }
+                }
+                yield new LongColumn(values, column.copyNulls(), column.size());
+            }
+            case FLOAT -> {
+                double[] values = new double[column.size()];
+                for (int row = 0; row < values.length; row++) {
+                    if (!column.isNull(row)) {
+                        values[row] = column.getDouble(row) + noise[row];
+                    }
+                }
+                yield new DoubleColumn(values, column.copyNulls(), column.size());
+            }
+            case DATE -> MemoryColumns.mapDateRows(column, (row, date) -> shiftDate(date, Math.round(noise[row])));
+        };
+        tables.put(nameTable, table.withColumn(nameColumn, changed));
+    }
+
+    private double[] noise(int size) {
+        if (seed == null) {
+            seed = new SplittableRandom().nextLong();
+        }
+        Distribution type = distribution == null ? Distribution.GAUSSIAN : distribution;
+        return NoiseGenerator.generate(size, type, sigma, seed);
+    }
+
+    // Шум per задаёт сдвиг дня и месяца в процентах от их текущих значений
+    private LocalDate shiftDate(LocalDate date, long per) {
+        long day = date.getDayOfMonth();
+        long month = date.getMonthValue();
+
+        day -= day - ((day * per) / 100);
+        month -= month - ((month * per) / 100);
+        return date.plusDays(day).plusMonths(month);
+    }
 }
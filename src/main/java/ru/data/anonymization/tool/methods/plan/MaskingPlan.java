@@ -0,0 +1,116 @@
+package ru.data.anonymization.tool.methods.plan;
+
+import lombok.Getter;
+import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.options.type.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * План выполнения методов обезличивания: граф зависимостей между методами,
+ * которые изменяют одни и те же таблицы.
+ * Методы одной таблицы выполняются в порядке добавления, методы разных таблиц можно выполнять параллельно.
+ */
+@Getter
+public class MaskingPlan {
+
+    private final List<Step> steps;
+    private final List<List<Step>> stages;
+
+    private MaskingPlan(List<Step> steps) {
+        this.steps = Collections.unmodifiableList(steps);
+        this.stages = buildStages(steps);
+    }
+
+    public static MaskingPlan build(Map<String, MaskItem> methods) {
+        List<Step> steps = new ArrayList<>();
+        for (Map.Entry<String, MaskItem> entry : methods.entrySet()) {
+            Step step = new Step(steps.size(), entry.getKey(), entry.getValue(), tables(entry.getValue()));
+            for (Step previous : steps) {
+                if (previous.conflictsWith(step)) {
+                    step.dependsOn.add(previous.index);
+                }
+            }
+            steps.add(step);
+        }
+        return new MaskingPlan(steps);
+    }
+
+    public boolean isSequential() {
+        return stages.stream().allMatch(stage -> stage.size() <= 1);
+    }
+
+    public String describe() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < stages.size(); i++) {
+            sb.append("Этап ").append(i + 1).append(":");
+            for (Step step : stages.get(i)) {
+                sb.append(" ").append(step.name);
+            }
+            sb.append("\n");
+        }
+        return sb.toString();
+    }
+
+    private static List<List<Step>> buildStages(List<Step> steps) {
+        List<List<Step>> stages = new ArrayList<>();
+        int[] level = new int[steps.size()];
+        for (Step step : steps) {
+            for (int dependency : step.dependsOn) {
+                level[step.index] = Math.max(level[step.index], level[dependency] + 1);
+            }
+            while (stages.size() <= level[step.index]) {
+                stages.add(new ArrayList<>());
+            }
+            stages.get(level[step.index]).add(step);
+        }
+        return stages;
+    }
+
+    // Таблицы, которые метод изменяет: основная таблица и создаваемые им вспомогательные таблицы.
+    // Методы одной таблицы выполняются по очереди даже для разных столбцов: UPDATE всей таблицы
+    // ждут блокировок строк друг друга (и могут взаимно заблокироваться), а ALTER TABLE блокирует таблицу целиком
+    private static Set<String> tables(MaskItem method) {
+        Set<String> tables = new HashSet<>();
+        tables.add(method.getTable().toLowerCase());
+        if (method instanceof Shuffle shuffle) {
+            shuffle.getNamesColumn().forEach(column -> tables.add(("mixing_instructions_" + column).toLowerCase()));
+        } else if (method instanceof GeneralizationValue generalization) {
+            if ("default".equals(generalization.getInstruct())) {
+                tables.add(generalization.getGeneralizationTable().toLowerCase());
+            }
+        } else if (method instanceof GeneralizationString generalization) {
+            tables.add(generalization.getGeneralizationTable().toLowerCase());
+        } else if (method instanceof Identifier identifier) {
+            identifier.getNamesColumn().forEach(column -> tables.add(("hash_" + column).toLowerCase()));
+        } else if (method instanceof Decomposition decomposition) {
+            tables.add(decomposition.getNameNewTable().toLowerCase());
+        }
+        return tables;
+    }
+
+    @Getter
+    public static class Step {
+        private final int index;
+        private final String name;
+        private final MaskItem method;
+        private final List<Integer> dependsOn = new ArrayList<>();
+        private final Set<String> tables;
+
+        private Step(int index, String name, MaskItem method, Set<String> tables) {
+            this.index = index;
+            this.name = name;
+            this.method = method;
+            this.tables = tables;
+        }
+
+        private boolean conflictsWith(Step other) {
+            return !Collections.disjoint(tables, other.tables);
+        }
+    }
+}
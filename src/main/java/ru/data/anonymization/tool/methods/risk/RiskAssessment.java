@@ -2,41 +2,79 @@ package ru.data.anonymization.tool.methods.risk;
 
 import ru.data.anonymization.tool.util.Factorial;
 
+import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 public class RiskAssessment {
-    public static double calculateProsecutorMetricA(Map<String[], Integer> equivalenceClasses, long n, double threshold) {
-        return equivalenceClasses
-                .values()
-                .stream()
-                .mapToDouble((classSize) -> classSize * ((1.0 / classSize > threshold) ? 1 : 0))
-                .sum() / n;
+    private static final int SERIES_TERMS = 7;
+    private static final int SMALL_SIZES = 1024;
+
+    public static double calculateProsecutorMetricA(int[] classSizes, long n, double threshold) {
+        double sum = 0;
+        for (int classSize : classSizes) {
+            if (1.0 / classSize > threshold) {
+                sum += classSize;
+            }
+        }
+        return sum / n;
     }
 
-    public static double calculateProsecutorMetricB(Map<String[], Integer> equivalenceClasses) {
-        return equivalenceClasses
-                .values()
-                .stream()
-                .mapToDouble((classSize) -> 1.0 / classSize)
-                .max()
-                .getAsDouble();
+    public static double calculateProsecutorMetricB(int[] classSizes) {
+        int minSize = Integer.MAX_VALUE;
+        for (int classSize : classSizes) {
+            minSize = Math.min(minSize, classSize);
+        }
+        return 1.0 / minSize;
+    }
+
+    public static double calculateProsecutorMetricC(int[] classSizes, long n) {
+        return (double) classSizes.length / n;
+    }
+
+    // Риск зависит только от размера класса, поэтому он считается один раз для каждого размера
+    // по гистограмме размеров: малые размеры в массиве, остальные в словаре
+    public static double calculateGlobalRisk(int[] classSizes, double proportion, long n) {
+        long[] small = new long[SMALL_SIZES];
+        Map<Integer, long[]> large = new HashMap<>();
+        for (int classSize : classSizes) {
+            if (classSize < SMALL_SIZES) {
+                small[classSize]++;
+            } else {
+                large.computeIfAbsent(classSize, size -> new long[1])[0]++;
+            }
+        }
+
+        double[] series = series(proportion);
+        double sum = 0;
+        for (int classSize = 1; classSize < SMALL_SIZES; classSize++) {
+            if (small[classSize] != 0) {
+                sum += (double) small[classSize] * classSize * getRisk(classSize, proportion, series);
+            }
+        }
+        for (Map.Entry<Integer, long[]> entry : large.entrySet()) {
+            sum += (double) entry.getValue()[0] * entry.getKey() * getRisk(entry.getKey(), proportion, series);
+        }
+        return sum / n;
     }
 
-    public static double calculateProsecutorMetricC(Map<String[], Integer> equivalenceClasses, long n) {
-        return (double) equivalenceClasses.size() / n;
+    private static double getRisk(int classSize, double proportion, double[] series) {
+        return switch (classSize) {
+            case 1 -> getRiskForF1(proportion);
+            case 2 -> getRiskForF2(proportion);
+            case 3 -> getRiskForF3(proportion);
+            default -> getRiskForF4AndMore(classSize, proportion, series);
+        };
     }
 
-    public static Map<String[], Double> calculateRiskWithoutIdentificationTable(Map<String[], Integer> equivalenceClasses, double proportion) {
-        return equivalenceClasses
-                .entrySet()
-                .stream()
-                .collect(Collectors.toMap(Map.Entry::getKey, (entry) -> switch (entry.getValue()) {
-                    case 1 -> getRiskForF1(proportion);
-                    case 2 -> getRiskForF2(proportion);
-                    case 3 -> getRiskForF3(proportion);
-                    default -> getRiskForF4AndMore(entry.getValue(), proportion);
-                }));
+    // Числители ряда i! * (1 - proportion)^i, общие для всех размеров классов
+    private static double[] series(double proportion) {
+        double[] series = new double[SERIES_TERMS + 1];
+        double power = 1;
+        for (int i = 1; i <= SERIES_TERMS; i++) {
+            power *= 1 - proportion;
+            series[i] = Factorial.calculate(i) * power;
+        }
+        return series;
     }
 
     private static double getRiskForF1(double proportion) {
@@ -53,23 +91,14 @@ public class RiskAssessment {
         return (proportion / (2 * Math.pow(q, 3))) * (q * (3 * q - 2) - 2 * Math.pow(proportion, 2) * Math.log(proportion));
     }
 
-    private static double getRiskForF4AndMore(Integer value, double proportion) {
+    // Знаменатель (value + 1)...(value + i) накапливается вместе с номером члена ряда
+    private static double getRiskForF4AndMore(int value, double proportion, double[] series) {
         double sumResult = 1;
-        for (int i = 1; i < 8; i++) {
-            double divider = 1;
-            for (int j = 1; j <= i; j++) {
-                divider *= value + j;
-            }
-            sumResult += Factorial.calculate(i) * Math.pow(1 - proportion, i) / divider;
+        double divider = 1;
+        for (int i = 1; i <= SERIES_TERMS; i++) {
+            divider *= value + i;
+            sumResult += series[i] / divider;
         }
         return sumResult * proportion / value;
     }
-
-    public static double calculateGlobalRisk(Map<String[], Integer> equivalenceClasses, double proportion, long n) {
-        return calculateRiskWithoutIdentificationTable(equivalenceClasses, proportion)
-                .entrySet()
-                .stream()
-                .mapToDouble((entry) -> equivalenceClasses.get(entry.getKey()) * entry.getValue())
-                .sum() / n;
-    }
 }
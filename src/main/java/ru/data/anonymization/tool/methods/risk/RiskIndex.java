@@ -0,0 +1,260 @@
+package ru.data.anonymization.tool.methods.risk;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Классы эквивалентности таблицы по квазиидентификаторам: размер каждого класса и гистограммы значений
+ * чувствительных атрибутов внутри класса. Строится за один проход по данным, после чего по нему
+ * считаются все метрики риска: k-анонимность, l-разнообразие (distinct и энтропийное) и t-близость.
+ */
+public class RiskIndex {
+
+    private final int sensitiveCount;
+    private final Map<List<String>, EquivalenceClass> classes = new HashMap<>();
+    // Распределение значений каждого чувствительного атрибута по всей таблице
+    private final List<Map<String, long[]>> overall = new ArrayList<>();
+    private long rowCount;
+
+    public RiskIndex(int sensitiveCount) {
+        this.sensitiveCount = sensitiveCount;
+        for (int i = 0; i < sensitiveCount; i++) {
+            overall.add(new HashMap<>());
+        }
+    }
+
+    public int getSensitiveCount() {
+        return sensitiveCount;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public int size() {
+        return classes.size();
+    }
+
+    // count строк с квазиидентификатором quasiIdentifiers
+    public void add(String[] quasiIdentifiers, long count) {
+        classOf(quasiIdentifiers).size += count;
+        rowCount += count;
+    }
+
+    // count строк класса quasiIdentifiers со значением value чувствительного атрибута column
+    public void addSensitive(String[] quasiIdentifiers, int column, String value, long count) {
+        classOf(quasiIdentifiers).histograms.get(column).computeIfAbsent(value, key -> new long[1])[0] += count;
+        overall.get(column).computeIfAbsent(value, key -> new long[1])[0] += count;
+    }
+
+    public int[] classSizes() {
+        int[] sizes = new int[classes.size()];
+        int i = 0;
+        for (EquivalenceClass equivalenceClass : classes.values()) {
+            sizes[i++] = (int) equivalenceClass.size;
+        }
+        return sizes;
+    }
+
+    public double kAnonymity() {
+        return classes.values().stream().mapToLong(equivalenceClass -> equivalenceClass.size).min().orElse(0);
+    }
+
+    // Наименьшее число различных значений чувствительного атрибута в классе
+    public double distinctLDiversity() {
+        double l = Double.POSITIVE_INFINITY;
+        for (EquivalenceClass equivalenceClass : classes.values()) {
+            for (Map<String, long[]> histogram : equivalenceClass.histograms) {
+                l = Math.min(l, histogram.size());
+            }
+        }
+        return Double.isInfinite(l) ? 0 : l;
+    }
+
+    // Наименьшее exp(H) по классам: класс энтропийно l-разнообразен, если H >= ln(l)
+    public double entropyLDiversity() {
+        double l = Double.POSITIVE_INFINITY;
+        for (EquivalenceClass equivalenceClass : classes.values()) {
+            for (Map<String, long[]> histogram : equivalenceClass.histograms) {
+                long total = 0;
+                for (long[] frequency : histogram.values()) {
+                    total += frequency[0];
+                }
+                double entropy = 0;
+                for (long[] frequency : histogram.values()) {
+                    double p = (double) frequency[0] / total;
+                    entropy -= p * Math.log(p);
+                }
+                l = Math.min(l, Math.exp(entropy));
+            }
+        }
+        return Double.isInfinite(l) ? 0 : l;
+    }
+
+    // Наибольшее расстояние EMD между распределением атрибута в классе и во всей таблице.
+    // Для числовых атрибутов расстояние упорядоченное, для остальных все значения равноудалены
+    public double tCloseness() {
+        double t = 0;
+        for (int column = 0; column < sensitiveCount; column++) {
+            OrderedDistribution ordered = OrderedDistribution.of(overall.get(column));
+            for (EquivalenceClass equivalenceClass : classes.values()) {
+                Map<String, long[]> histogram = equivalenceClass.histograms.get(column);
+                t = Math.max(t, ordered != null
+                        ? ordered.distance(histogram)
+                        : equalDistance(histogram, overall.get(column), rowCount));
+            }
+        }
+        return t;
+    }
+
+    // Номер чувствительного атрибута строки GROUPING SETS по значению GROUPING(s1, ..., sm):
+    // в наборе с атрибутом j его бит (старший - s1) равен 0, биты остальных атрибутов - 1
+    public static int groupedColumn(int grouping, int sensitiveCount) {
+        int column = 0;
+        while (column < sensitiveCount - 1 && (grouping >> (sensitiveCount - 1 - column) & 1) == 1) {
+            column++;
+        }
+        return column;
+    }
+
+    private EquivalenceClass classOf(String[] quasiIdentifiers) {
+        return classes.computeIfAbsent(Arrays.asList(quasiIdentifiers), key -> new EquivalenceClass(sensitiveCount));
+    }
+
+    // Половина суммы |p - q|; значения, которых нет в классе, дают в сумму q
+    private static double equalDistance(Map<String, long[]> histogram, Map<String, long[]> overall, long rowCount) {
+        long total = 0;
+        for (long[] frequency : histogram.values()) {
+            total += frequency[0];
+        }
+        if (total == 0 || rowCount == 0) {
+            return 0;
+        }
+        double difference = 0;
+        double covered = 0;
+        for (Map.Entry<String, long[]> entry : histogram.entrySet()) {
+            double p = (double) entry.getValue()[0] / total;
+            double q = (double) overall.get(entry.getKey())[0] / rowCount;
+            difference += Math.abs(p - q);
+            covered += q;
+        }
+        return (difference + Math.max(0, 1 - covered)) / 2;
+    }
+
+    private static final class EquivalenceClass {
+        private long size;
+        private final List<Map<String, long[]>> histograms = new ArrayList<>();
+
+        private EquivalenceClass(int sensitiveCount) {
+            for (int i = 0; i < sensitiveCount; i++) {
+                histograms.add(new HashMap<>());
+            }
+        }
+    }
+
+    /**
+     * Упорядоченное расстояние EMD: (1 / (m - 1)) * сумма |P_i - Q_i| накопленных долей по m значениям
+     * атрибута во всей таблице. Между значениями класса P_i постоянна, а Q_i не убывает, поэтому сумма
+     * на таком отрезке считается по префиксным суммам Q с двоичным поиском точки смены знака.
+     */
+    private static final class OrderedDistribution {
+        private final Map<String, Integer> positions = new HashMap<>();
+        // cumulative[i] - доля значений с номером <= i; prefix[i] - сумма cumulative[0..i-1]
+        private final double[] cumulative;
+        private final double[] prefix;
+
+        private OrderedDistribution(List<Map.Entry<String, long[]>> values, long total) {
+            cumulative = new double[values.size()];
+            prefix = new double[values.size() + 1];
+            long running = 0;
+            for (int i = 0; i < values.size(); i++) {
+                positions.put(values.get(i).getKey(), i);
+                running += values.get(i).getValue()[0];
+                cumulative[i] = (double) running / total;
+                prefix[i + 1] = prefix[i] + cumulative[i];
+            }
+        }
+
+        // null, если атрибут не числовой; пустые значения в распределение не входят
+        private static OrderedDistribution of(Map<String, long[]> overall) {
+            List<Map.Entry<String, long[]>> values = new ArrayList<>();
+            Map<String, Double> numbers = new HashMap<>();
+            long total = 0;
+            for (Map.Entry<String, long[]> entry : overall.entrySet()) {
+                if (entry.getKey() == null) continue;
+                try {
+                    numbers.put(entry.getKey(), Double.parseDouble(entry.getKey().trim().replace(',', '.')));
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+                values.add(entry);
+                total += entry.getValue()[0];
+            }
+            if (values.isEmpty()) {
+                return null;
+            }
+            values.sort((a, b) -> Double.compare(numbers.get(a.getKey()), numbers.get(b.getKey())));
+            return new OrderedDistribution(values, total);
+        }
+
+        private double distance(Map<String, long[]> histogram) {
+            int m = cumulative.length;
+            if (m < 2) {
+                return 0;
+            }
+            // Только значения класса: (номер значения << 32 | номер записи) сортируются по номеру значения,
+            // память и время - O(k log k) для k значений класса, а не O(m) на каждый класс
+            long[] order = new long[histogram.size()];
+            long[] counts = new long[histogram.size()];
+            long total = 0;
+            int k = 0;
+            for (Map.Entry<String, long[]> entry : histogram.entrySet()) {
+                if (entry.getKey() == null) continue;
+                order[k] = (long) positions.get(entry.getKey()) << 32 | k;
+                counts[k] = entry.getValue()[0];
+                total += counts[k];
+                k++;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            Arrays.sort(order, 0, k);
+
+            double sum = 0;
+            double classShare = 0;
+            int from = 0;
+            for (int i = 0; i <= k; i++) {
+                int to = i < k ? (int) (order[i] >>> 32) : m - 1;
+                sum += runDistance(classShare, from, to);
+                if (i < k) {
+                    classShare += (double) counts[(int) order[i]] / total;
+                    from = to;
+                }
+            }
+            return sum / (m - 1);
+        }
+
+        // Сумма |share - cumulative[i]| для i из [from, to)
+        private double runDistance(double share, int from, int to) {
+            if (from >= to) {
+                return 0;
+            }
+            int low = from;
+            int high = to;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < share) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            double below = share * (low - from) - (prefix[low] - prefix[from]);
+            double above = (prefix[to] - prefix[low]) - share * (to - low);
+            return below + above;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package ru.data.anonymization.tool.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Профиль столбца для оценки качества обезличивания. Все показатели считаются по гистограмме значений:
+ * в БД - одним запросом с одним проходом по таблице, для CSV - одним проходом по строкам.
+ * Профили кэшируются до изменения данных (см. dataChanged).
+ */
+@Service
+@RequiredArgsConstructor
+public class ColumnProfiler {
+
+    private final TableInfoService tableInfoService;
+
+    private final Map<ProfileKey, ColumnProfile> profiles = new ConcurrentHashMap<>();
+    private final AtomicLong dataVersion = new AtomicLong();
+
+    // count - число непустых значений; entropy - энтропия Шеннона распределения непустых значений
+    public record ColumnProfile(double min, double max, double mean, double sumOfSquares,
+                                double meanAbsoluteDeviation, long nullCount, long count, double entropy) {
+    }
+
+    private record ProfileKey(String database, String table, String column, boolean numeric, long version) {
+    }
+
+    // Вызывается после любых изменений данных: ранее посчитанные профили больше не используются
+    public void dataChanged() {
+        dataVersion.incrementAndGet();
+        profiles.clear();
+    }
+
+    // Профиль по базе сессии: разные столбцы можно считать параллельно на отдельных соединениях
+    public ColumnProfile profile(DatabaseConnectionService session, String table, String column, boolean numeric)
+            throws SQLException {
+        String database = tableInfoService.isCsvSourceActive() ? "" : session.getDatabase();
+        ProfileKey key = new ProfileKey(database, table, column, numeric, dataVersion.get());
+        ColumnProfile profile = profiles.get(key);
+        if (profile == null) {
+            profile = tableInfoService.isCsvSourceActive()
+                    ? profileRows(table, column, numeric)
+                    : profileDatabase(session, table, column, numeric);
+            profiles.put(key, profile);
+        }
+        return profile;
+    }
+
+    private ColumnProfile profileDatabase(DatabaseConnectionService session, String table, String column,
+                                          boolean numeric) throws SQLException {
+        String value = numeric ? column + "::DOUBLE PRECISION" : "NULL::DOUBLE PRECISION";
+        String sql = """
+                WITH histogram AS (
+                    SELECT %1$s AS v, %2$s IS NULL AS is_null, count(*)::DOUBLE PRECISION AS c
+                    FROM %3$s GROUP BY %2$s
+                ), totals AS (
+                    SELECT coalesce(sum(c) FILTER (WHERE NOT is_null), 0) AS n, sum(v * c) / sum(c) FILTER (WHERE v IS NOT NULL) AS mean
+                    FROM histogram
+                )
+                SELECT min(v), max(v), totals.mean, sum(v * v * c), sum(abs(v - totals.mean) * c) / nullif(totals.n, 0),
+                       coalesce(sum(c) FILTER (WHERE is_null), 0), totals.n,
+                       coalesce(-sum(c / totals.n * ln(c / totals.n)) FILTER (WHERE NOT is_null) / ln(2), 0)
+                FROM histogram, totals
+                GROUP BY totals.n, totals.mean;
+                """.formatted(value, column, table);
+        try (ResultSet resultSet = session.executeQuery(sql)) {
+            if (!resultSet.next()) {
+                return new ColumnProfile(0, 0, 0, 0, 0, 0, 0, 0);
+            }
+            return new ColumnProfile(
+                    resultSet.getDouble(1),
+                    resultSet.getDouble(2),
+                    resultSet.getDouble(3),
+                    resultSet.getDouble(4),
+                    resultSet.getDouble(5),
+                    resultSet.getLong(6),
+                    resultSet.getLong(7),
+                    resultSet.getDouble(8)
+            );
+        }
+    }
+
+    // Один проход по строкам: гистограмма текстовых значений, числовые показатели считаются по ней
+    private ColumnProfile profileRows(String table, String column, boolean numeric) {
+        Map<String, long[]> histogram = new HashMap<>();
+        long[] nullCount = new long[1];
+        try (Stream<Object[]> rows = tableInfoService.streamRows(table, List.of(column))) {
+            rows.forEach(row -> {
+                if (row[0] == null) {
+                    nullCount[0]++;
+                } else {
+                    histogram.computeIfAbsent(row[0].toString(), value -> new long[1])[0]++;
+                }
+            });
+        }
+
+        // Числовой столбец группируется по числу, как GROUP BY в БД; пустые и нечисловые ячейки
+        // CSV считаются пустыми значениями: в БД такие значения хранятся как NULL
+        Map<Double, long[]> numbers = new HashMap<>();
+        if (numeric) {
+            for (Map.Entry<String, long[]> entry : histogram.entrySet()) {
+                try {
+                    double number = Double.parseDouble(entry.getKey().trim().replace(',', '.'));
+                    numbers.computeIfAbsent(number, value -> new long[1])[0] += entry.getValue()[0];
+                } catch (NumberFormatException e) {
+                    nullCount[0] += entry.getValue()[0];
+                }
+            }
+        }
+        Iterable<long[]> frequencies = numeric ? numbers.values() : histogram.values();
+
+        long count = 0;
+        double entropy = 0;
+        for (long[] frequency : frequencies) {
+            count += frequency[0];
+        }
+        for (long[] frequency : frequencies) {
+            double p = (double) frequency[0] / count;
+            entropy -= p * Math.log(p) / Math.log(2);
+        }
+        if (!numeric || count == 0) {
+            return new ColumnProfile(0, 0, 0, 0, 0, nullCount[0], count, entropy);
+        }
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (Map.Entry<Double, long[]> entry : numbers.entrySet()) {
+            double number = entry.getKey();
+            long frequency = entry.getValue()[0];
+            min = Math.min(min, number);
+            max = Math.max(max, number);
+            sum += number * frequency;
+            sumOfSquares += number * number * frequency;
+        }
+        double mean = sum / count;
+        double deviation = 0;
+        for (Map.Entry<Double, long[]> entry : numbers.entrySet()) {
+            deviation += Math.abs(entry.getKey() - mean) * entry.getValue()[0];
+        }
+        return new ColumnProfile(min, max, mean, sumOfSquares, deviation / count, nullCount[0], count, entropy);
+    }
+}
@@ -1,18 +1,35 @@
 package ru.data.anonymization.tool.service;
 
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
 import org.springframework.stereotype.Service;
 
 import java.sql.*;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 @Service
 public class DatabaseConnectionService {
+    private static final int FETCH_SIZE = 10_000;
+    private static final long IDLE_TIMEOUT_MS = 10_000;
+
     private final String defaultHost;
     private final String defaultPort;
     private final String defaultDatabase;
     private final String defaultUsername;
     private final String defaultPassword;
+    @Getter
+    private final int poolSize;
 
     private String host;
     private String port;
@@ -25,19 +42,41 @@ public class DatabaseConnectionService {
     private String jdbcUrl;
     private Connection connection;
     private Statement statement;
+    // Пулы соединений по имени базы: сессии могут работать и с другой базой того же сервера
+    private final Map<String, HikariDataSource> dataSources = new HashMap<>();
 
     public DatabaseConnectionService(
             @Value("${app.database.host:localhost}") String defaultHost,
             @Value("${app.database.port:5432}") String defaultPort,
             @Value("${app.database.name:postgres}") String defaultDatabase,
             @Value("${app.database.username:postgres}") String defaultUsername,
-            @Value("${app.database.password:postgres}") String defaultPassword
+            @Value("${app.database.password:postgres}") String defaultPassword,
+            @Value("${app.database.pool-size:4}") int poolSize
     ) {
         this.defaultHost = defaultHost;
         this.defaultPort = defaultPort;
         this.defaultDatabase = defaultDatabase;
         this.defaultUsername = defaultUsername;
         this.defaultPassword = defaultPassword;
+        this.poolSize = Math.max(poolSize, 1);
+    }
+
+    // Сессия на отдельном соединении из пула; закрывается через disconnect()
+    private DatabaseConnectionService(DatabaseConnectionService parent, String database, Connection connection)
+            throws SQLException {
+        this(parent.defaultHost, parent.defaultPort, parent.defaultDatabase, parent.defaultUsername,
+             parent.defaultPassword, parent.poolSize);
+        this.host = parent.host;
+        this.port = parent.port;
+        this.database = database;
+        this.username = parent.username;
+        this.password = parent.password;
+        this.jdbcUrl = "jdbc:postgresql://" + host + ":" + port + "/" + database;
+        this.connection = connection;
+        this.statement = connection.createStatement(
+                ResultSet.TYPE_SCROLL_INSENSITIVE,
+                ResultSet.CONCUR_UPDATABLE
+        );
     }
 
     public boolean isConnected() {
@@ -63,6 +102,7 @@ public class DatabaseConnectionService {
         this.username = username;
         this.password = password;
         jdbcUrl = "jdbc:postgresql://" + host + ":" + port + "/" + database;
+        closePool();
     }
 
     public boolean connectWithDefaultSettings() {
@@ -99,6 +139,7 @@ public class DatabaseConnectionService {
             }
             statement = null;
             connection = null;
+            closePool();
             isConnect = true;
         } catch (SQLException e) {
             isConnect = false;
@@ -106,10 +147,64 @@ public class DatabaseConnectionService {
         return isConnect;
     }
 
+    public DatabaseConnectionService openSession() throws SQLException {
+        return openSession(database);
+    }
+
+    public DatabaseConnectionService openSession(String database) throws SQLException {
+        return new DatabaseConnectionService(this, database, getDataSource(database).getConnection());
+    }
+
+    private synchronized HikariDataSource getDataSource(String database) {
+        return dataSources.computeIfAbsent(database, name -> {
+            HikariConfig config = new HikariConfig();
+            config.setJdbcUrl("jdbc:postgresql://" + host + ":" + port + "/" + name);
+            config.setUsername(username);
+            config.setPassword(password);
+            config.setMaximumPoolSize(poolSize);
+            // Простаивающие соединения закрываются: пока они открыты, базу нельзя удалить или скопировать
+            config.setMinimumIdle(0);
+            config.setIdleTimeout(IDLE_TIMEOUT_MS);
+            config.setPoolName("masking-pool-" + name);
+            return new HikariDataSource(config);
+        });
+    }
+
+    // Пока открыт пул, базу нельзя удалить или использовать как шаблон
+    public synchronized void closePool(String database) {
+        HikariDataSource dataSource = dataSources.remove(database);
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    private synchronized void closePool() {
+        dataSources.values().forEach(HikariDataSource::close);
+        dataSources.clear();
+    }
+
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        connection.setAutoCommit(autoCommit);
+    }
+
+    public void commit() throws SQLException {
+        connection.commit();
+    }
+
+    public void rollback() throws SQLException {
+        connection.rollback();
+    }
+
+    // Отдельный Statement: повторное выполнение общего statement закрыло бы ResultSet,
+    // который вызывающий код ещё читает (например, при записи через BulkUpdate во время обхода)
     public void execute(String sql) throws SQLException {
-        statement.execute(sql);
+        try (Statement command = connection.createStatement()) {
+            command.execute(sql);
+        }
     }
 
+    // Результат читается через общий statement и действителен только до следующего executeQuery
+    // на этом соединении: вложенные чтения во время обхода - через getPrepareStatement
     public ResultSet executeQuery(String sql) throws SQLException {
         try {
             return statement.executeQuery(sql);
@@ -119,6 +214,67 @@ public class DatabaseConnectionService {
         }
     }
 
+    // Построчное чтение результата курсором на отдельном соединении из пула: драйвер получает строки
+    // порциями по FETCH_SIZE и не держит весь результат в памяти. Соединение освобождается при закрытии потока
+    public Stream<Object[]> streamQuery(String sql) throws SQLException {
+        DatabaseConnectionService session = openSession();
+        try {
+            session.setAutoCommit(false);
+            Statement cursor = session.connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            cursor.setFetchSize(FETCH_SIZE);
+            ResultSet resultSet = cursor.executeQuery(sql);
+            int columnCount = resultSet.getMetaData().getColumnCount();
+
+            Iterator<Object[]> rows = new Iterator<>() {
+                private Boolean hasNext;
+
+                @Override
+                public boolean hasNext() {
+                    if (hasNext == null) {
+                        try {
+                            hasNext = resultSet.next();
+                        } catch (SQLException e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    return hasNext;
+                }
+
+                @Override
+                public Object[] next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    hasNext = null;
+                    Object[] row = new Object[columnCount];
+                    try {
+                        for (int i = 0; i < columnCount; i++) {
+                            row[i] = resultSet.getObject(i + 1);
+                        }
+                    } catch (SQLException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return row;
+                }
+            };
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(rows, Spliterator.ORDERED), false)
+                    .onClose(() -> {
+                        try {
+                            resultSet.close();
+                            cursor.close();
+                            session.rollback();
+                        } catch (SQLException e) {
+                            System.out.println(e.getLocalizedMessage());
+                        } finally {
+                            session.disconnect();
+                        }
+                    });
+        } catch (SQLException e) {
+            session.disconnect();
+            throw e;
+        }
+    }
+
     public PreparedStatement getPrepareStatement(String sql) throws SQLException {
         try {
             return connection.prepareStatement(sql);
@@ -127,4 +283,8 @@ public class DatabaseConnectionService {
             throw e;
         }
     }
+
+    public CopyManager getCopyManager() throws SQLException {
+        return new CopyManager(connection.unwrap(BaseConnection.class));
+    }
 }
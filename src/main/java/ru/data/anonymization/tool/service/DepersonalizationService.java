@@ -2,9 +2,10 @@ package ru.data.anonymization.tool.service;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.Setter;
 import org.springframework.stereotype.Service;
+import ru.data.anonymization.tool.methods.options.CopyBuffer;
 import ru.data.anonymization.tool.methods.options.MaskItem;
+import ru.data.anonymization.tool.methods.plan.MaskingPlan;
 import ru.data.anonymization.tool.dto.SyntheticConfigDto;
 import ru.data.anonymization.tool.dto.TableData;
 
@@ -16,11 +17,16 @@ import java.nio.file.StandardOpenOption;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @RequiredArgsConstructor
@@ -32,15 +38,18 @@ public class DepersonalizationService {
     private final TableInfoService tableInfoService;
     private final SelectionService selectionService;
     private final SyntheticMethodService syntheticMethodService;
+    private final ColumnProfiler columnProfiler;
+    private final RiskTracker riskTracker;
 
     @Getter
-    @Setter
-    private Map<String, MaskItem> methodsMap = new HashMap<>();
+    private Map<String, MaskItem> methodsMap = new LinkedHashMap<>();
 
     private final Map<String, List<String>> riskConfigMap = new HashMap<>();
+    private final Map<String, List<String>> sensitiveConfigMap = new HashMap<>();
     private final Map<String, List<String>> assessmentConfigMap = new HashMap<>();
 
     private List<MaskItem> methods = new ArrayList<>();
+    private MaskingPlan plan;
     private String oldConnection = null;
 
     public void addRiskConfig(String key, List<String> columns) {
@@ -55,6 +64,18 @@ public class DepersonalizationService {
         riskConfigMap.remove(key);
     }
 
+    public void addSensitiveConfig(String key, List<String> columns) {
+        sensitiveConfigMap.put(key, columns);
+    }
+
+    public List<String> getSensitiveConfig(String key) {
+        return sensitiveConfigMap.get(key);
+    }
+
+    public void removeSensitiveConfig(String key) {
+        sensitiveConfigMap.remove(key);
+    }
+
     public void addAssessmentConfig(String key, List<String> columns) {
         assessmentConfigMap.put(key, columns);
     }
@@ -67,6 +88,15 @@ public class DepersonalizationService {
         return assessmentConfigMap.get(key);
     }
 
+    // Порядок методов сохраняется: от него зависит план выполнения
+    public void setMethodsMap(Map<String, MaskItem> methodsMap) {
+        this.methodsMap = new LinkedHashMap<>(methodsMap);
+    }
+
+    public MaskingPlan getPlan() {
+        return MaskingPlan.build(methodsMap);
+    }
+
     public void addMethod(String name, MaskItem method) {
         methodsMap.put(name, method);
     }
@@ -91,6 +121,7 @@ public class DepersonalizationService {
 
     public String start() {
         methods = new ArrayList<>(methodsMap.values());
+        plan = getPlan();
         List<SyntheticConfigDto> syntheticConfigs = syntheticMethodService.getConfigs();
 
         if (methods.isEmpty() && syntheticConfigs.isEmpty()) {
@@ -136,6 +167,10 @@ public class DepersonalizationService {
             System.out.println("State: " + someREs.getString("state"));
             System.out.println("----------------------------");
         }
+        // Соединения пулов к исходной и обезличенной базе (например, после выгрузки синтетики) мешают
+        // удалить базу и использовать исходную как шаблон
+        controllerDB.closePool(controllerDB.getDatabase());
+        controllerDB.closePool(maskDB);
         controllerDB.execute("DROP DATABASE IF EXISTS " + maskDB + ";");
         controllerDB.execute(
                 "CREATE DATABASE " + maskDB
@@ -158,29 +193,97 @@ public class DepersonalizationService {
 
     private String masking() throws Exception {
         statisticService.resetStatistic();
-        statisticService.setNotMaskStatistic(assessmentConfigMap);
+        columnProfiler.dataChanged();
+        // Исходная база не меняется, снимок до обезличивания снимается с неё параллельно с работой методов
+        CompletableFuture<Void> notMaskStatistic =
+                statisticService.setNotMaskStatisticAsync(assessmentConfigMap, oldConnection);
 
         dataPreparationService.start();
         applySelectionFilter();
 
         long start = System.currentTimeMillis();
 
-        for (MaskItem method : methods) {
-            method.start(controllerDB);
+        riskTracker.start(riskConfigMap);
+        try {
+            runMethods(plan);
+        } finally {
+            riskTracker.finish();
         }
 
         long end = System.currentTimeMillis();
 
-        statisticService.calculateRisk(riskConfigMap);
+        columnProfiler.dataChanged();
+        statisticService.calculateRisk(riskConfigMap, sensitiveConfigMap);
         statisticService.setMaskStatistic(assessmentConfigMap);
+        notMaskStatistic.join();
 
         return formatSeconds(start, end);
     }
 
+    // Методы без общих таблиц и столбцов выполняются параллельно на отдельных соединениях,
+    // зависимые методы запускаются после завершения предыдущих по плану
+    private void runMethods(MaskingPlan plan) throws Exception {
+        if (plan.isSequential()) {
+            for (MaskingPlan.Step step : plan.getSteps()) {
+                riskTracker.beforeStep(step);
+                step.getMethod().start(controllerDB);
+                riskTracker.afterStep(step);
+            }
+            return;
+        }
+
+        int parallelism = plan.getStages().stream().mapToInt(List::size).max().orElse(1);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, controllerDB.getPoolSize()));
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (MaskingPlan.Step step : plan.getSteps()) {
+                CompletableFuture<?>[] dependencies = step.getDependsOn().stream()
+                        .map(futures::get)
+                        .toArray(CompletableFuture[]::new);
+                futures.add(CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                    riskTracker.beforeStep(step);
+                    runStep(step);
+                    riskTracker.afterStep(step);
+                }, executor));
+            }
+            try {
+                CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof CompletionException && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if (cause instanceof Exception exception) {
+                    throw exception;
+                }
+                throw e;
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void runStep(MaskingPlan.Step step) {
+        DatabaseConnectionService session = null;
+        try {
+            session = controllerDB.openSession();
+            step.getMethod().start(session);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        } finally {
+            if (session != null) {
+                session.disconnect();
+            }
+        }
+    }
+
     private String maskingSynthetic(List<SyntheticConfigDto> syntheticConfigs)
             throws Exception {
         statisticService.resetStatistic();
-        statisticService.setNotMaskStatistic(assessmentConfigMap);
+        columnProfiler.dataChanged();
+        // Исходная база не меняется, снимок до обезличивания снимается с неё параллельно с работой методов
+        CompletableFuture<Void> notMaskStatistic =
+                statisticService.setNotMaskStatisticAsync(assessmentConfigMap, oldConnection);
 
         dataPreparationService.start();
         applySelectionFilter();
@@ -193,8 +296,10 @@ public class DepersonalizationService {
 
         long end = System.currentTimeMillis();
 
-        statisticService.calculateRisk(riskConfigMap);
+        columnProfiler.dataChanged();
+        statisticService.calculateRisk(riskConfigMap, sensitiveConfigMap);
         statisticService.setMaskStatistic(assessmentConfigMap);
+        notMaskStatistic.join();
 
         return formatSeconds(start, end);
     }
@@ -205,7 +310,7 @@ public class DepersonalizationService {
                 continue;
             }
 
-            Set<Integer> selectedRows = selectionService.getSelectedRows(tableName);
+            BitSet selectedRows = selectionService.getSelectedRows(tableName);
             if (selectedRows.isEmpty()) {
                 controllerDB.execute("DELETE FROM " + tableName + ";");
                 continue;
@@ -216,30 +321,38 @@ public class DepersonalizationService {
                 continue;
             }
 
+            // Номера выбранных строк загружаются через COPY во временную таблицу,
+            // невыбранные строки удаляются антисоединением с ней
             String orderColumn = columnNames.get(0);
-            String selectedRowNumbers = selectedRows.stream()
-                                                    .map(index -> index + 1)
-                                                    .sorted()
-                                                    .map(String::valueOf)
-                                                    .collect(Collectors.joining(", "));
+            String selectionTable = "selection_rows_" + tableName;
+            controllerDB.execute("DROP TABLE IF EXISTS " + selectionTable + ";");
+            controllerDB.execute("CREATE TEMP TABLE " + selectionTable + " (rn BIGINT);");
+            CopyBuffer rows = new CopyBuffer(controllerDB, selectionTable, List.of("rn"));
+            for (int index = selectedRows.nextSetBit(0); index >= 0; index = selectedRows.nextSetBit(index + 1)) {
+                rows.add(index + 1);
+            }
+            rows.finish();
+            controllerDB.execute("ANALYZE " + selectionTable + ";");
 
             String filterSql = """
-                    WITH ordered AS (
-                        SELECT ctid, ROW_NUMBER() OVER (ORDER BY %s) AS rn
-                        FROM %s
-                    )
-                    DELETE FROM %s
-                    USING ordered
-                    WHERE %s.ctid = ordered.ctid AND ordered.rn NOT IN (%s);
-                    """.formatted(orderColumn, tableName, tableName, tableName, selectedRowNumbers);
+                    DELETE FROM %1$s
+                    WHERE ctid = ANY(ARRAY(
+                        SELECT ordered.ctid
+                        FROM (SELECT ctid, ROW_NUMBER() OVER (ORDER BY %2$s) AS rn FROM %1$s) ordered
+                        WHERE NOT EXISTS (SELECT 1 FROM %3$s s WHERE s.rn = ordered.rn)
+                    ));
+                    """.formatted(tableName, orderColumn, selectionTable);
 
             controllerDB.execute(filterSql);
+            controllerDB.execute("DROP TABLE " + selectionTable + ";");
         }
     }
 
-    private String maskingCsv() throws IOException {
+    // Методы выполняются над таблицами в памяти без обращения к БД; созданные методами таблицы
+    // (инструкции перемешивания, правила обобщения и т.п.) сохраняются под своими именами
+    private String maskingCsv() throws Exception {
         long start = System.currentTimeMillis();
-        List<TableData> maskedTables = new ArrayList<>();
+        Map<String, TableData> tables = new LinkedHashMap<>();
 
         for (String tableName : tableInfoService.getTables()) {
             var tableOptional = tableInfoService.getCsvTable(tableName);
@@ -248,22 +361,22 @@ public class DepersonalizationService {
             }
 
             TableData sourceTable = tableOptional.get();
-            List<List<String>> filteredRows = new ArrayList<>();
-            List<List<String>> sourceRows = sourceTable.getRows();
-
-            for (int i = 0; i < sourceRows.size(); i++) {
-                if (!selectionService.hasCustomSelection(tableName)
-                        || selectionService.isRowSelected(tableName, i)) {
-                    filteredRows.add(new ArrayList<>(sourceRows.get(i)));
-                }
+            if (selectionService.hasCustomSelection(tableName)) {
+                sourceTable = sourceTable.select(selectionService.getSelectedRows(tableName).stream().toArray());
             }
+            tables.put(tableName, sourceTable);
+        }
+        Set<String> sourceTables = Set.copyOf(tables.keySet());
 
-            TableData maskedTable = new TableData(
-                    tableName + "_masked",
-                    sourceTable.getColumnNames(),
-                    filteredRows
-            );
+        for (MaskingPlan.Step step : plan.getSteps()) {
+            step.getMethod().start(tables);
+        }
 
+        List<TableData> maskedTables = new ArrayList<>();
+        for (Map.Entry<String, TableData> entry : tables.entrySet()) {
+            TableData maskedTable = sourceTables.contains(entry.getKey())
+                    ? entry.getValue().withName(entry.getKey() + "_masked")
+                    : entry.getValue();
             maskedTables.add(maskedTable);
             saveTempCsv(maskedTable);
         }
@@ -298,8 +411,8 @@ public class DepersonalizationService {
 
         List<String> lines = new ArrayList<>();
         lines.add(String.join(";", tableData.getColumnNames()));
-        for (List<String> row : tableData.getRows()) {
-            lines.add(String.join(";", row));
+        for (int i = 0; i < tableData.getRowCount(); i++) {
+            lines.add(String.join(";", tableData.getRow(i)));
         }
 
         Files.write(tempFile, lines, StandardOpenOption.TRUNCATE_EXISTING);
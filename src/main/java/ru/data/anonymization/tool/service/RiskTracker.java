@@ -0,0 +1,218 @@
+package ru.data.anonymization.tool.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import ru.data.anonymization.tool.methods.plan.MaskingPlan;
+import ru.data.anonymization.tool.methods.risk.RiskIndex;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Гистограмма классов эквивалентности по квазиидентификаторам каждой таблицы из настроек риска.
+ * Триггеры уровня оператора с таблицами переходов записывают изменения классов в таблицу risk_delta_<таблица>,
+ * после шага обезличивания гистограмма обновляется по этим изменениям без повторного чтения таблицы.
+ * Изменения UPDATE записываются только во время шагов, затрагивающих столбцы квазиидентификатора:
+ * остальные методы тоже обновляют всю таблицу (служебные столбцы), но классы не меняют.
+ * Удаление строк учитывается всегда. Если столбец квазиидентификатора пересоздан или удалён,
+ * гистограмма строится заново.
+ */
+@Service
+@RequiredArgsConstructor
+public class RiskTracker {
+
+    private static final String DELTA_PREFIX = "risk_delta_";
+
+    private final DatabaseConnectionService controllerDB;
+    private final StatisticService statisticService;
+
+    private final Map<String, List<String>> quasiIdentifiers = new LinkedHashMap<>();
+    private final Map<String, Map<String, Integer>> histograms = new HashMap<>();
+    // Номера и типы столбцов квазиидентификатора: меняются, если столбец удалили или заменили другим
+    private final Map<String, String> layouts = new HashMap<>();
+
+    public synchronized void start(Map<String, List<String>> riskConfigMap) {
+        finish();
+        if (statisticService.getRiskMethods().isEmpty()) return;
+        try {
+            for (Map.Entry<String, List<String>> entry : riskConfigMap.entrySet()) {
+                if (entry.getValue() == null || entry.getValue().isEmpty()) continue;
+                quasiIdentifiers.put(entry.getKey(), entry.getValue());
+                createDeltaTable(entry.getKey(), entry.getValue());
+                rebuild(entry.getKey());
+            }
+            record("Исходные данные");
+        } catch (SQLException e) {
+            System.out.println(e.getLocalizedMessage());
+            finish();
+        }
+    }
+
+    // Шаги одной таблицы выполняются по очереди (см. MaskingPlan), поэтому триггер UPDATE
+    // включается только на время шага, который меняет квазиидентификатор
+    public synchronized void beforeStep(MaskingPlan.Step step) {
+        String table = step.getMethod().getTable();
+        if (!touchesQuasiIdentifier(table, step)) return;
+        try {
+            controllerDB.execute("ALTER TABLE " + table + " ENABLE TRIGGER " + DELTA_PREFIX + table + "_update;");
+        } catch (SQLException e) {
+            System.out.println(e.getLocalizedMessage());
+        }
+    }
+
+    public synchronized void afterStep(MaskingPlan.Step step) {
+        String table = step.getMethod().getTable();
+        if (!quasiIdentifiers.containsKey(table)) return;
+        try {
+            if (touchesQuasiIdentifier(table, step)) {
+                controllerDB.execute("ALTER TABLE " + table + " DISABLE TRIGGER " + DELTA_PREFIX + table + "_update;");
+                refresh(table);
+            } else {
+                // Классы могли измениться только из-за удалённых строк, столбцы квазиидентификатора на месте
+                drain(table);
+            }
+            record(step.getName());
+        } catch (SQLException e) {
+            System.out.println(e.getLocalizedMessage());
+        }
+    }
+
+    // Удаляет триггеры, функции и таблицы изменений из обезличенной базы
+    public synchronized void finish() {
+        for (String table : quasiIdentifiers.keySet()) {
+            try {
+                controllerDB.execute("DROP FUNCTION IF EXISTS " + DELTA_PREFIX + table + "() CASCADE;");
+                controllerDB.execute("DROP TABLE IF EXISTS " + DELTA_PREFIX + table + ";");
+            } catch (SQLException e) {
+                System.out.println(e.getLocalizedMessage());
+            }
+        }
+        quasiIdentifiers.clear();
+        histograms.clear();
+        layouts.clear();
+    }
+
+    // Метод меняет, удаляет или переносит в другую таблицу хотя бы один столбец квазиидентификатора
+    private boolean touchesQuasiIdentifier(String table, MaskingPlan.Step step) {
+        List<String> columns = quasiIdentifiers.get(table);
+        if (columns == null) return false;
+        return step.getMethod().getColumn().stream()
+                .anyMatch(column -> columns.stream().anyMatch(column::equalsIgnoreCase));
+    }
+
+    private void createDeltaTable(String table, List<String> columns) throws SQLException {
+        String delta = DELTA_PREFIX + table;
+        String key = classKey(columns);
+        controllerDB.execute("DROP FUNCTION IF EXISTS " + delta + "() CASCADE;");
+        controllerDB.execute("DROP TABLE IF EXISTS " + delta + ";");
+        controllerDB.execute("CREATE UNLOGGED TABLE " + delta + " (class_key JSONB, delta BIGINT);");
+        // Строки с неизменённым классом при UPDATE взаимно сокращаются и в таблицу изменений не попадают
+        controllerDB.execute("""
+                CREATE FUNCTION %1$s() RETURNS trigger LANGUAGE plpgsql AS $$
+                BEGIN
+                    IF TG_OP = 'UPDATE' THEN
+                        INSERT INTO %1$s
+                        SELECT class_key, sum(delta) FROM (
+                            SELECT %2$s AS class_key, -1 AS delta FROM (SELECT to_jsonb(o) AS r FROM risk_old_rows o) old_rows
+                            UNION ALL
+                            SELECT %2$s, 1 FROM (SELECT to_jsonb(n) AS r FROM risk_new_rows n) new_rows
+                        ) changes
+                        GROUP BY class_key
+                        HAVING sum(delta) <> 0;
+                    ELSIF TG_OP = 'DELETE' THEN
+                        INSERT INTO %1$s
+                        SELECT %2$s, -count(*) FROM (SELECT to_jsonb(o) AS r FROM risk_old_rows o) old_rows GROUP BY 1;
+                    ELSE
+                        INSERT INTO %1$s
+                        SELECT %2$s, count(*) FROM (SELECT to_jsonb(n) AS r FROM risk_new_rows n) new_rows GROUP BY 1;
+                    END IF;
+                    RETURN NULL;
+                END
+                $$;
+                """.formatted(delta, key));
+        controllerDB.execute("CREATE TRIGGER " + delta + "_update AFTER UPDATE ON " + table
+                             + " REFERENCING OLD TABLE AS risk_old_rows NEW TABLE AS risk_new_rows"
+                             + " FOR EACH STATEMENT EXECUTE FUNCTION " + delta + "();");
+        controllerDB.execute("ALTER TABLE " + table + " DISABLE TRIGGER " + delta + "_update;");
+        controllerDB.execute("CREATE TRIGGER " + delta + "_delete AFTER DELETE ON " + table
+                             + " REFERENCING OLD TABLE AS risk_old_rows"
+                             + " FOR EACH STATEMENT EXECUTE FUNCTION " + delta + "();");
+        controllerDB.execute("CREATE TRIGGER " + delta + "_insert AFTER INSERT ON " + table
+                             + " REFERENCING NEW TABLE AS risk_new_rows"
+                             + " FOR EACH STATEMENT EXECUTE FUNCTION " + delta + "();");
+    }
+
+    // Ключ класса - массив значений квазиидентификатора; удалённый столбец даёт null, а не ошибку
+    private static String classKey(List<String> columns) {
+        return columns.stream()
+                .map(column -> "r -> '" + column.replace("'", "''") + "'")
+                .collect(Collectors.joining(", ", "jsonb_build_array(", ")"));
+    }
+
+    // Таблица читается и накопленные изменения удаляются одним оператором, то есть в одном снимке данных:
+    // изменения параллельно работающих методов не будут учтены дважды
+    private void rebuild(String table) throws SQLException {
+        List<String> columns = quasiIdentifiers.get(table);
+        layouts.put(table, layout(table, columns));
+        Map<String, Integer> histogram = new HashMap<>();
+        String sql = "WITH drained AS (DELETE FROM " + DELTA_PREFIX + table + ") "
+                     + "SELECT class_key::text, count(*) FROM (SELECT " + classKey(columns) + " AS class_key "
+                     + "FROM (SELECT to_jsonb(t) AS r FROM " + table + " t) table_rows) classes GROUP BY class_key;";
+        try (ResultSet resultSet = controllerDB.executeQuery(sql)) {
+            while (resultSet.next()) {
+                histogram.put(resultSet.getString(1), resultSet.getInt(2));
+            }
+        }
+        histograms.put(table, histogram);
+    }
+
+    private void refresh(String table) throws SQLException {
+        if (!layout(table, quasiIdentifiers.get(table)).equals(layouts.get(table))) {
+            rebuild(table);
+            return;
+        }
+        drain(table);
+    }
+
+    private void drain(String table) throws SQLException {
+        Map<String, Integer> histogram = histograms.get(table);
+        String sql = "WITH drained AS (DELETE FROM " + DELTA_PREFIX + table + " RETURNING class_key, delta) "
+                     + "SELECT class_key::text, sum(delta) FROM drained GROUP BY class_key;";
+        try (ResultSet resultSet = controllerDB.executeQuery(sql)) {
+            while (resultSet.next()) {
+                int size = histogram.merge(resultSet.getString(1), resultSet.getInt(2), Integer::sum);
+                if (size <= 0) {
+                    histogram.remove(resultSet.getString(1));
+                }
+            }
+        }
+    }
+
+    private String layout(String table, List<String> columns) throws SQLException {
+        String names = columns.stream()
+                .map(column -> "'" + column.replace("'", "''") + "'")
+                .collect(Collectors.joining(", "));
+        String sql = "SELECT coalesce(string_agg(attname || ':' || attnum || ':' || atttypid, ',' ORDER BY attname), '') "
+                     + "FROM pg_attribute WHERE attrelid = to_regclass('" + table + "') AND attnum > 0 "
+                     + "AND NOT attisdropped AND attname IN (" + names + ");";
+        try (ResultSet resultSet = controllerDB.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getString(1) : "";
+        }
+    }
+
+    private void record(String step) {
+        List<RiskIndex> tables = new ArrayList<>();
+        for (Map<String, Integer> histogram : histograms.values()) {
+            RiskIndex index = new RiskIndex(0);
+            histogram.forEach((key, size) -> index.add(new String[]{key}, size));
+            tables.add(index);
+        }
+        statisticService.addRiskStep(step, tables);
+    }
+}
@@ -1,21 +1,17 @@
 package ru.data.anonymization.tool.service;
 
 import org.springframework.stereotype.Service;
+import ru.data.anonymization.tool.util.RowSampler;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
+import java.util.BitSet;
 import java.util.Map;
-import java.util.Set;
+import java.util.SplittableRandom;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
 
 @Service
 public class SelectionService {
 
-    private final Map<String, Set<Integer>> selectedRowsByTable = new ConcurrentHashMap<>();
+    private final Map<String, BitSet> selectedRowsByTable = new ConcurrentHashMap<>();
     private final Map<String, Integer> selectedPercentByTable = new ConcurrentHashMap<>();
 
     public void selectRows(String tableName, int totalRows, int percent) {
@@ -26,15 +22,8 @@ public class SelectionService {
             return;
         }
 
-        int selectionSize = (int) Math.round((totalRows * (double) percent) / 100);
-        List<Integer> allIndexes = IntStream.range(0, totalRows)
-                                            .boxed()
-                                            .collect(Collectors.toCollection(ArrayList::new));
-
-        Collections.shuffle(allIndexes);
-
-        Set<Integer> selectedIndexes = new HashSet<>(allIndexes.subList(0, selectionSize));
-        selectedRowsByTable.put(tableName, selectedIndexes);
+        int selectionSize = RowSampler.sampleSize(totalRows, percent);
+        selectedRowsByTable.put(tableName, RowSampler.select(totalRows, selectionSize, new SplittableRandom()));
     }
 
     public boolean hasCustomSelection(String tableName) {
@@ -42,19 +31,21 @@ public class SelectionService {
     }
 
     public boolean isRowSelected(String tableName, int rowIndex) {
-        Set<Integer> selectedRows = selectedRowsByTable.get(tableName);
+        BitSet selectedRows = selectedRowsByTable.get(tableName);
         if (selectedRows == null) {
             return true;
         }
-        return selectedRows.contains(rowIndex);
+        return selectedRows.get(rowIndex);
     }
 
     public int getSelectionPercent(String tableName) {
         return selectedPercentByTable.getOrDefault(tableName, 100);
     }
 
-    public Set<Integer> getSelectedRows(String tableName) {
-        return selectedRowsByTable.getOrDefault(tableName, Collections.emptySet());
+    // Номера выбранных строк (с нуля)
+    public BitSet getSelectedRows(String tableName) {
+        BitSet selectedRows = selectedRowsByTable.get(tableName);
+        return selectedRows == null ? new BitSet() : (BitSet) selectedRows.clone();
     }
 
     public void clearAll() {
@@ -62,4 +53,3 @@ public class SelectionService {
         selectedPercentByTable.clear();
     }
 }
-
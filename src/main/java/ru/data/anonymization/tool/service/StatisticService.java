@@ -8,17 +8,24 @@ import ru.data.anonymization.tool.methods.options.type.*;
 import ru.data.anonymization.tool.dto.DataPreparationDto;
 import ru.data.anonymization.tool.dto.enums.RiskEnum;
 import ru.data.anonymization.tool.dto.RiskDto;
+import ru.data.anonymization.tool.dto.RiskStepDto;
 import ru.data.anonymization.tool.dto.StatisticDto;
 import ru.data.anonymization.tool.dto.StatisticResponseDto;
-import ru.data.anonymization.tool.util.EquivalenceClasses;
+import ru.data.anonymization.tool.methods.risk.RiskIndex;
 
 import java.math.BigDecimal;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static ru.data.anonymization.tool.methods.risk.RiskAssessment.*;
 
@@ -31,12 +38,10 @@ public class StatisticService {
     private final DataPreparationService dataPreparationService;
     private final DatabaseConnectionService controllerDB;
     private final TableInfoService tableInfoService;
+    private final ColumnProfiler columnProfiler;
     @Getter
     private List<RiskDto> riskMethods = new ArrayList<>();
 
-    private String table;
-    private String column;
-
     private int countExtraStatic;
 
     private List<String> methodsForStatistic;
@@ -44,6 +49,7 @@ public class StatisticService {
 
     private List<StatisticDto> statisticNotMask;
     private List<StatisticDto> statisticMask;
+    private List<RiskStepDto> riskHistory = new ArrayList<>();
 
     private StatisticResponseDto result;
 
@@ -72,6 +78,7 @@ public class StatisticService {
         countExtraStatic = 0;
         statisticNotMask = new ArrayList<>();
         statisticMask = new ArrayList<>();
+        riskHistory = new ArrayList<>();
     }
 
     public void setRisk(String methodName, double proportion) {
@@ -128,62 +135,134 @@ public class StatisticService {
         result = responseDto
                 //.Shannon(BigDecimal.valueOf(Shannon / statisticMask.size()))
                 .risk(riskMethods)
+                .riskHistory(riskHistory)
                 .build();
 
         return result;
     }
 
-    public void setNotMaskStatistic(Map<String, List<String>> assessmentConfigMap) {
-        List<DataPreparationDto> preparationList = dataPreparationService.getPreparationMethods();
-
-        preparationList.forEach(attribute -> {
-            List<String> assessmentList = assessmentConfigMap.get(attribute.getTableName());
-            if (assessmentList != null && assessmentList.contains(attribute.getColumnName())) {
-                statisticNotMask.add(getStatic(attribute, false));
-            }
-        });
+    // Снимок до обезличивания считается по исходной базе на её собственном пуле соединений,
+    // поэтому может выполняться одновременно с обезличиванием копии
+    public CompletableFuture<Void> setNotMaskStatisticAsync(Map<String, List<String>> assessmentConfigMap,
+                                                            String database) {
+        List<DataPreparationDto> attributes = getAssessedAttributes(assessmentConfigMap);
+        return collectStatistic(attributes, database)
+                .thenAccept(statistic -> statisticNotMask = statistic)
+                .whenComplete((ignored, e) -> controllerDB.closePool(database));
     }
 
     public void setMaskStatistic(Map<String, List<String>> assessmentConfigMap) {
-        List<DataPreparationDto> preparationList = dataPreparationService.getPreparationMethods();
+        List<DataPreparationDto> attributes = getAssessedAttributes(assessmentConfigMap);
+        statisticMask = collectStatistic(attributes, controllerDB.getDatabase()).join();
+        countExtraStatic = (int) attributes.stream().filter(this::isNumeric).count();
+    }
 
-        preparationList.forEach(attribute -> {
-            List<String> assessmentList = assessmentConfigMap.get(attribute.getTableName());
-            if (assessmentList != null && assessmentList.contains(attribute.getColumnName())) {
-                statisticMask.add(getStatic(attribute, true));
-            }
-        });
+    private List<DataPreparationDto> getAssessedAttributes(Map<String, List<String>> assessmentConfigMap) {
+        return dataPreparationService.getPreparationMethods().stream()
+                .filter(attribute -> {
+                    List<String> assessmentList = assessmentConfigMap.get(attribute.getTableName());
+                    return assessmentList != null && assessmentList.contains(attribute.getColumnName());
+                })
+                .toList();
     }
 
-    public void calculateRisk(Map<String, List<String>> riskConfigMap) {
+    // Столбцы профилируются параллельно, каждый на своём соединении; порядок результата совпадает с attributes
+    private CompletableFuture<List<StatisticDto>> collectStatistic(List<DataPreparationDto> attributes, String database) {
+        if (attributes.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(attributes.size(), controllerDB.getPoolSize()));
+        List<CompletableFuture<StatisticDto>> futures = attributes.stream()
+                .map(attribute -> CompletableFuture.supplyAsync(() -> getStatic(attribute, database), executor))
+                .toList();
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .<List<StatisticDto>>thenApply(ignored -> new ArrayList<>(futures.stream().map(CompletableFuture::join).toList()))
+                .whenComplete((ignored, e) -> executor.shutdown());
+    }
+
+    // Для каждой таблицы строится один индекс классов эквивалентности, все метрики считаются по нему
+    public void calculateRisk(Map<String, List<String>> riskConfigMap, Map<String, List<String>> sensitiveConfigMap) {
         if (riskMethods.isEmpty()) return;
+        boolean sensitive = riskMethods.stream().anyMatch(riskMethod -> isSensitive(riskMethod.getName()));
+        List<RiskIndex> tables = new ArrayList<>();
+        for (String table : riskConfigMap.keySet()) {
+            List<String> sensitiveColumns = sensitive
+                    ? sensitiveConfigMap.getOrDefault(table, List.of())
+                    : List.of();
+            tables.add(buildRiskIndex(table, riskConfigMap.get(table), sensitiveColumns));
+        }
+        evaluateRisk(tables, riskMethods);
+    }
+
+    // Риск после очередного шага обезличивания по уже известным размерам классов эквивалентности;
+    // метрики по чувствительным атрибутам для шагов не считаются
+    public void addRiskStep(String step, Collection<RiskIndex> tables) {
+        List<RiskDto> stepRisk = new ArrayList<>();
+        for (RiskDto riskMethod : riskMethods) {
+            if (isSensitive(riskMethod.getName())) continue;
+            RiskDto riskDto = new RiskDto();
+            riskDto.setName(riskMethod.getName());
+            riskDto.setProportion(riskMethod.getProportion());
+            stepRisk.add(riskDto);
+        }
+        evaluateRisk(tables, stepRisk);
+
+        RiskStepDto riskStep = new RiskStepDto();
+        riskStep.setStep(step);
+        riskStep.setK((int) tables.stream()
+                .filter(index -> index.size() > 0)
+                .mapToDouble(RiskIndex::kAnonymity)
+                .min()
+                .orElse(0));
+        riskStep.setRisk(stepRisk);
+        riskHistory.add(riskStep);
+    }
+
+    private boolean isSensitive(String methodName) {
+        RiskEnum method = RiskEnum.findByName(methodName);
+        return method != null && method.isSensitive();
+    }
+
+    // Метрики ProsecutorMetric и GlobalRisk усредняются по таблицам,
+    // для k, l и t берётся худшее значение: наименьшие k и l, наибольшее t
+    private void evaluateRisk(Collection<RiskIndex> tables, List<RiskDto> methods) {
         double riskA = 0;
         double riskB = 0;
         double riskC = 0;
         double riskGlobal = 0;
+        Map<RiskEnum, Double> worst = new EnumMap<>(RiskEnum.class);
 
         int n = 0;
 
-        for (String table : riskConfigMap.keySet()) {
-            List<String[]> tableList = tableInfoService.getTableLikeList(table, riskConfigMap.get(table));
-            long size = tableList.size();
-            if (tableList.isEmpty()) continue;
-            if (tableList.get(0).length == 0) continue;
-
-            Map<String[], Integer> equivalence = EquivalenceClasses.execute(tableList);
-            for (RiskDto riskMethod : riskMethods) {
-                switch (RiskEnum.findByName(riskMethod.getName())) {
+        for (RiskIndex index : tables) {
+            if (index.size() == 0) continue;
+            int[] classSizes = index.classSizes();
+            long size = index.getRowCount();
+
+            for (RiskDto riskMethod : methods) {
+                RiskEnum method = RiskEnum.findByName(riskMethod.getName());
+                switch (method) {
                     case PROSECUTOR_METRIC_A ->
-                            riskA += calculateProsecutorMetricA(equivalence, size, riskMethod.getProportion());
-                    case PROSECUTOR_METRIC_B -> riskB += calculateProsecutorMetricB(equivalence);
-                    case PROSECUTOR_METRIC_C -> riskC += calculateProsecutorMetricC(equivalence, size);
-                    case GLOBAL_RISK -> riskGlobal += calculateGlobalRisk(equivalence, riskMethod.getProportion(), size);
+                            riskA += calculateProsecutorMetricA(classSizes, size, riskMethod.getProportion());
+                    case PROSECUTOR_METRIC_B -> riskB += calculateProsecutorMetricB(classSizes);
+                    case PROSECUTOR_METRIC_C -> riskC += calculateProsecutorMetricC(classSizes, size);
+                    case GLOBAL_RISK -> riskGlobal += calculateGlobalRisk(classSizes, riskMethod.getProportion(), size);
+                    case K_ANONYMITY -> worst.merge(method, index.kAnonymity(), Math::min);
+                    case DISTINCT_L_DIVERSITY -> {
+                        if (index.getSensitiveCount() > 0) worst.merge(method, index.distinctLDiversity(), Math::min);
+                    }
+                    case ENTROPY_L_DIVERSITY -> {
+                        if (index.getSensitiveCount() > 0) worst.merge(method, index.entropyLDiversity(), Math::min);
+                    }
+                    case T_CLOSENESS -> {
+                        if (index.getSensitiveCount() > 0) worst.merge(method, index.tCloseness(), Math::max);
+                    }
                 }
             }
             n++;
         }
         if (n != 0){
-            for (RiskDto riskMethod : riskMethods) {
+            for (RiskDto riskMethod : methods) {
                 if (riskMethod.getName().equals("ProsecutorMetricA")) {
                     riskMethod.setResult(riskA/n);
                 }
@@ -196,173 +275,123 @@ public class StatisticService {
                 if (riskMethod.getName().equals("GlobalRisk")) {
                     riskMethod.setResult(riskGlobal/n);
                 }
+                Double result = worst.get(RiskEnum.findByName(riskMethod.getName()));
+                if (result != null) {
+                    riskMethod.setResult(result);
+                }
             }
         }
     }
 
-    private StatisticDto getStatic(DataPreparationDto dto, boolean isMask) {
-        table = dto.getTableName();
-        column = dto.getColumnName();
-
-        StatisticDto.StatisticDtoBuilder statisticBuilder = StatisticDto
-                .builder()
-                .table(table)
-                .column(column)
-                .Shannon(getShannon());
-        if (dto.getDataType().equals("Integer") || dto.getDataType().equals("Float")) {
-            if (isMask) countExtraStatic++;
-            statisticBuilder
-                    .min(getMin())
-                    .max(getMax())
-                    .avg(getAverage())
-                    .avg(getAverage())
-                    .RMSE(getRMSE())
-                    .MSE(getMSE())
-                    .MD(getMD());
-        }
-        return statisticBuilder.build();
-    }
-
-    private double getMin() {
-        ResultSet resultSet;
-        try {
-            resultSet = controllerDB.executeQuery(
-                    "SELECT min(" + column + ") " +
-                            "FROM " + table + ";"
-            );
-            resultSet.next();
-            return resultSet.getDouble(1);
-        } catch (SQLException e) {
-            System.out.println("Всё, конец!");
-        }
-        return 0;
-    }
-
-    private double getMax() {
-        ResultSet resultSet;
-        try {
-            resultSet = controllerDB.executeQuery(
-                    "SELECT max(" + column + ") " +
-                            "FROM " + table + ";"
-            );
-            resultSet.next();
-            return resultSet.getDouble(1);
-        } catch (SQLException e) {
-            System.out.println("Всё, конец!");
-        }
-        return 0;
-    }
-
-    private double getAverage() {
-        ResultSet resultSet;
-        try {
-            resultSet = controllerDB.executeQuery(
-                    "SELECT avg(" + column + ") " +
-                            "FROM " + table + ";"
-            );
-            resultSet.next();
-            return resultSet.getDouble(1);
-        } catch (SQLException e) {
-            System.out.println("Всё, конец!");
-        }
-        return 0;
-    }
-
-    private double getRMSE() {
-        return Math.sqrt(getMSE());
-    }
-
-    private double getMSE() {
-        ResultSet resultSet;
-        try {
-            double sumOfSquaredErrors = 0.0;
-            resultSet = controllerDB.executeQuery(
-                    "SELECT " + column +
-                            " FROM " + table + ";"
-            );
-
-            while (resultSet.next()) {
-                double value = resultSet.getDouble(1);
-                sumOfSquaredErrors += Math.pow(value, 2);
+    // Один проход по таблице. В БД группировка GROUPING SETS ((квазиидентификаторы, s1), (квазиидентификаторы, s2), ...)
+    // даёт гистограммы всех чувствительных атрибутов за одно чтение таблицы; размеры классов берутся из первого набора
+    private RiskIndex buildRiskIndex(String table, List<String> quasiIdentifiers, List<String> sensitiveColumns) {
+        // Атрибут из квазиидентификатора (или указанный дважды) в GROUPING SETS даёт наборы с одинаковыми битами
+        // GROUPING, и строки нельзя разнести по атрибутам; внутри класса такой атрибут всё равно одно значение
+        List<String> sensitive = sensitiveColumns.stream()
+                .filter(column -> !quasiIdentifiers.contains(column))
+                .distinct()
+                .toList();
+        RiskIndex index = new RiskIndex(sensitive.size());
+        int q = quasiIdentifiers.size();
+        int m = sensitive.size();
+        if (tableInfoService.isDatabaseSourceActive()) {
+            String groups = String.join(", ", quasiIdentifiers);
+            StringBuilder sql = new StringBuilder("SELECT ");
+            quasiIdentifiers.forEach(column -> sql.append(column).append("::text, "));
+            sensitive.forEach(column -> sql.append(column).append("::text, "));
+            if (m > 0) {
+                sql.append("GROUPING(").append(String.join(", ", sensitive)).append("), ");
             }
-
-            return sumOfSquaredErrors / getCount();
-        } catch (SQLException e) {
-            System.out.println("Всё, конец!");
-        }
-        return 0;
-    }
-
-    private double getMD() {
-        double avg = getAverage();
-        ResultSet resultSet;
-        try {
-            double meanDeviation = 0.0;
-            resultSet = controllerDB.executeQuery(
-                    "SELECT " + column +
-                            " FROM " + table + ";"
-            );
-
-            while (resultSet.next()) {
-                double value = resultSet.getDouble(1);
-                meanDeviation += Math.abs(value - avg);
+            sql.append("count(*) FROM ").append(table).append(" GROUP BY ");
+            if (m > 0) {
+                sql.append("GROUPING SETS (")
+                        .append(sensitive.stream()
+                                        .map(column -> "(" + groups + ", " + column + ")")
+                                        .collect(Collectors.joining(", ")))
+                        .append(")");
+            } else {
+                sql.append(groups);
+            }
+            sql.append(";");
+
+            try (Stream<Object[]> rows = controllerDB.streamQuery(sql.toString())) {
+                rows.forEach(row -> {
+                    String[] key = new String[q];
+                    for (int i = 0; i < q; i++) {
+                        key[i] = (String) row[i];
+                    }
+                    long count = ((Number) row[row.length - 1]).longValue();
+                    if (m == 0) {
+                        index.add(key, count);
+                        return;
+                    }
+                    int column = RiskIndex.groupedColumn(((Number) row[q + m]).intValue(), m);
+                    index.addSensitive(key, column, (String) row[q + column], count);
+                    if (column == 0) {
+                        index.add(key, count);
+                    }
+                });
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
             }
+            return index;
+        }
 
-            return meanDeviation / getCount();
-        } catch (SQLException e) {
-            System.out.println("Всё, конец!");
+        List<String> columns = new ArrayList<>(quasiIdentifiers);
+        columns.addAll(sensitive);
+        try (Stream<Object[]> rows = tableInfoService.streamRows(table, columns)) {
+            rows.forEach(row -> {
+                if (row.length < q + m) return;
+                String[] key = Arrays.copyOf(TableInfoService.toText(row), q);
+                index.add(key, 1);
+                for (int j = 0; j < m; j++) {
+                    index.addSensitive(key, j, row[q + j] == null ? null : row[q + j].toString(), 1);
+                }
+            });
         }
-        return 0;
+        return index;
     }
 
-
-    private double getShannon() {
-        List<Integer> uniqueCount = getUniqueCount();
-        int count = getCount();
-
-        if (uniqueCount != null) {
-            return uniqueCount.stream().mapToDouble(unq -> (double) unq / count).map(value -> Math.abs((value) * log2(value))).sum();
-        }
-        return 0;
+    private boolean isNumeric(DataPreparationDto dto) {
+        return dto.getDataType().equals("Integer") || dto.getDataType().equals("Float");
     }
 
+    private StatisticDto getStatic(DataPreparationDto dto, String database) {
+        String table = dto.getTableName();
+        String column = dto.getColumnName();
+        boolean numeric = isNumeric(dto);
 
-    private List<Integer> getUniqueCount() {
-        List<Integer> list = new ArrayList<>();
-        ResultSet resultSet;
+        ColumnProfiler.ColumnProfile profile;
+        DatabaseConnectionService session = null;
         try {
-            resultSet = controllerDB.executeQuery(
-                    "SELECT count(*) " +
-                            "FROM " + table + " group by " + column + ";"
-            );
-            while (resultSet.next()) {
-                list.add(resultSet.getInt(1));
-            }
-
-            return list;
+            session = controllerDB.openSession(database);
+            profile = columnProfiler.profile(session, table, column, numeric);
         } catch (SQLException e) {
-            System.out.println("Всё, конец!");
+            System.out.println(e.getLocalizedMessage());
+            profile = new ColumnProfiler.ColumnProfile(0, 0, 0, 0, 0, 0, 0, 0);
+        } finally {
+            if (session != null) {
+                session.disconnect();
+            }
         }
-        return null;
-    }
 
-    private int getCount() {
-        ResultSet resultSet;
-        try {
-            resultSet = controllerDB.executeQuery(
-                    "SELECT count(" + column + ") " +
-                            "FROM " + table + ";"
-            );
-            resultSet.next();
-            return resultSet.getInt(1);
-        } catch (SQLException e) {
-            System.out.println("Всё, конец!");
+        StatisticDto.StatisticDtoBuilder statisticBuilder = StatisticDto
+                .builder()
+                .table(table)
+                .column(column)
+                .Shannon(profile.entropy());
+        if (numeric) {
+            double mse = profile.count() == 0 ? 0 : profile.sumOfSquares() / profile.count();
+            statisticBuilder
+                    .min(profile.min())
+                    .max(profile.max())
+                    .avg(profile.mean())
+                    .RMSE(Math.sqrt(mse))
+                    .MSE(mse)
+                    .MD(profile.meanAbsoluteDeviation());
         }
-        return 0;
-    }
-
-    private double log2(double x) {
-        return Math.log(x) / Math.log(2);
+        return statisticBuilder.build();
     }
 
     private double calculatePercent(double maskVal, double notMaskVal) {
@@ -16,11 +16,13 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class SyntheticMethodService {
@@ -69,8 +71,8 @@ public class SyntheticMethodService {
 
     public String sendTableData(String tableName, String methodName)
             throws IOException, InterruptedException {
-        TableData tableData = tableInfoService.getTableData(tableName);
-        if (tableData == null) {
+        List<String> columns = tableInfoService.getColumnNames(tableName);
+        if (columns.isEmpty()) {
             throw new IllegalStateException("Не удалось получить данные таблицы");
         }
 
@@ -79,16 +81,10 @@ public class SyntheticMethodService {
         JSONObject payload = new JSONObject();
         payload.put("method", methodName);
         payload.put("config", new JSONObject());
-        payload.put("table", tableData.getName());
-        payload.put("columns", tableData.getColumnNames());
+        payload.put("table", tableName);
+        payload.put("columns", columns);
 
-        JSONArray rows = new JSONArray();
-        for (List<String> row : tableData.getRows()) {
-            rows.put(new JSONArray(row));
-        }
-        payload.put("rows", rows);
-
-        List<String> outputLines = runScript(payload.toString(), null, scriptPath);
+        List<String> outputLines = runScript(payload, columns, null, scriptPath);
         return extractMessage(outputLines);
     }
 
@@ -97,8 +93,8 @@ public class SyntheticMethodService {
         List<TableData> syntheticTables = new ArrayList<>();
 
         for (SyntheticConfigDto config : configs) {
-            TableData sourceTable = tableInfoService.getTableData(config.getTableName());
-            if (sourceTable == null) {
+            List<String> columns = tableInfoService.getColumnNames(config.getTableName());
+            if (columns.isEmpty()) {
                 throw new IllegalStateException(
                         "Не удалось получить данные таблицы: " + config.getTableName()
                 );
@@ -108,8 +104,8 @@ public class SyntheticMethodService {
 
             JSONObject payload = new JSONObject();
             payload.put("method", Optional.ofNullable(config.getMethodName()).orElse(""));
-            payload.put("table", sourceTable.getName());
-            payload.put("columns", sourceTable.getColumnNames());
+            payload.put("table", config.getTableName());
+            payload.put("columns", columns);
 
             JSONObject configJson = new JSONObject();
             configJson.put("n", config.getRowsCount());
@@ -117,20 +113,15 @@ public class SyntheticMethodService {
             configJson.put("name", Optional.ofNullable(config.getName()).orElse(""));
             payload.put("config", configJson);
 
-            JSONArray rows = new JSONArray();
-            for (List<String> row : sourceTable.getRows()) {
-                rows.put(new JSONArray(row));
-            }
-            payload.put("rows", rows);
-
-            List<String> output = runScript(payload.toString(), config, scriptPath);
+            List<String> output = runScript(payload, columns, config, scriptPath);
             syntheticTables.add(extractTable(output, config));
         }
 
         return syntheticTables;
     }
 
-    private List<String> runScript(String payload, SyntheticConfigDto config, Path scriptPath)
+    private List<String> runScript(JSONObject payload, List<String> columns, SyntheticConfigDto config,
+                                   Path scriptPath)
             throws IOException, InterruptedException {
         List<String> command = new ArrayList<>();
         command.add("python");
@@ -153,7 +144,7 @@ public class SyntheticMethodService {
                 new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
              BufferedReader reader = new BufferedReader(
                      new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
-            writer.write(payload);
+            writePayload(writer, payload, columns);
             writer.flush();
             process.getOutputStream().close();
 
@@ -174,6 +165,29 @@ public class SyntheticMethodService {
         }
     }
 
+    // Строки таблицы дописываются в запрос по мере чтения, вся таблица в памяти не хранится
+    private void writePayload(BufferedWriter writer, JSONObject payload, List<String> columns) throws IOException {
+        String header = payload.toString();
+        writer.write(header, 0, header.length() - 1);
+        writer.write(",\"rows\":[");
+        try (Stream<Object[]> rows = tableInfoService.streamRows(payload.getString("table"), columns)) {
+            Iterator<Object[]> iterator = rows.iterator();
+            boolean first = true;
+            while (iterator.hasNext()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                first = false;
+                JSONArray row = new JSONArray();
+                for (Object value : iterator.next()) {
+                    row.put(value == null ? JSONObject.NULL : value.toString());
+                }
+                writer.write(row.toString());
+            }
+        }
+        writer.write("]}");
+    }
+
     private String extractMessage(List<String> outputLines) {
         for (int i = outputLines.size() - 1; i >= 0; i--) {
             String line = outputLines.get(i);
@@ -212,7 +226,11 @@ public class SyntheticMethodService {
                     }
 
                     List<String> columns = extractColumns(dataArray);
-                    List<List<String>> rows = new ArrayList<>();
+                    String tableName = Optional.ofNullable(config.getName())
+                            .filter(name -> !name.isBlank())
+                            .orElseGet(() -> config.getTableName() + "_synthetic");
+
+                    TableData.Builder builder = TableData.builder(tableName, columns);
                     for (int idx = 0; idx < dataArray.length(); idx++) {
                         JSONObject rowObject = dataArray.getJSONObject(idx);
                         List<String> row = columns.stream()
@@ -220,14 +238,9 @@ public class SyntheticMethodService {
                                         ? null
                                         : String.valueOf(rowObject.get(column)))
                                 .collect(Collectors.toList());
-                        rows.add(row);
+                        builder.addRow(row);
                     }
-
-                    String tableName = Optional.ofNullable(config.getName())
-                            .filter(name -> !name.isBlank())
-                            .orElseGet(() -> config.getTableName() + "_synthetic");
-
-                    return new TableData(tableName, columns, rows);
+                    return builder.build();
                 }
             } catch (Exception ignored) {
                 // Пробуем разобрать следующую строку
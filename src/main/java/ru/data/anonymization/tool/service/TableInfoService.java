@@ -11,7 +11,11 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import ru.data.anonymization.tool.dto.AttributeTypeDto;
 import ru.data.anonymization.tool.dto.TableData;
+import ru.data.anonymization.tool.methods.options.CopyBuffer;
+import ru.data.anonymization.tool.util.CsvReader;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -20,19 +24,22 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleConsumer;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class TableInfoService {
 
     public static final int PAGE_SIZE = 500;
+    private static final int PROGRESS_STEP = 10_000;
 
     private enum DataSourceType {
         NONE,
@@ -76,6 +83,37 @@ public class TableInfoService {
         return tableName;
     }
 
+    // Потоковый импорт CSV: строки передаются в COPY по мере чтения файла, память не зависит от размера файла
+    public String importCsvFile(Path filePath, DoubleConsumer progress) throws IOException, SQLException {
+        if (!connection.isConnected()) {
+            throw new IllegalStateException("Нет подключения к базе данных");
+        }
+
+        try (CsvReader reader = new CsvReader(filePath)) {
+            String tableName = normalizeIdentifier(filePath.getFileName().toString().replaceFirst("\\.[^.]+$", ""));
+            List<String> columnNames = sanitizeColumnNames(reader.getHeaders());
+            recreateTable(tableName, columnNames);
+
+            CopyBuffer buffer = new CopyBuffer(
+                    connection,
+                    quoteIdentifier(tableName),
+                    columnNames.stream().map(this::quoteIdentifier).collect(Collectors.toList())
+            );
+            String[] row;
+            while ((row = reader.next()) != null) {
+                buffer.add((Object[]) row);
+                if (buffer.getRowCount() % PROGRESS_STEP == 0) {
+                    progress.accept(reader.getProgress());
+                }
+            }
+            buffer.finish();
+            progress.accept(1);
+
+            useDatabaseSource();
+            return tableName;
+        }
+    }
+
     public Optional<TableData> getCsvTable(String name) {
         return Optional.ofNullable(csvTables.get(name));
     }
@@ -113,29 +151,6 @@ public class TableInfoService {
         return list;
     }
 
-    public TableData getTableData(String tableName) {
-        if (tableName == null) {
-            return null;
-        }
-        if (dataSourceType == DataSourceType.CSV) {
-            return csvTables.get(tableName);
-        }
-        if (dataSourceType == DataSourceType.NONE || !connection.isConnected()) {
-            return null;
-        }
-
-        List<String> columns = getColumnNames(tableName);
-        if (columns.isEmpty()) {
-            return new TableData(tableName, List.of(), List.of());
-        }
-
-        List<String[]> rawRows = getTableLikeList(tableName, columns);
-        List<List<String>> rows = rawRows.stream()
-                .map(Arrays::asList)
-                .collect(Collectors.toList());
-        return new TableData(tableName, columns, rows);
-    }
-
     public TableView<ObservableList<String>> buildData(String nameTable, int page) {
         page--;
         ObservableList<ObservableList<String>> data = FXCollections.observableArrayList();
@@ -182,7 +197,7 @@ public class TableInfoService {
         if (dataSourceType == DataSourceType.CSV) {
             TableData tableData = csvTables.get(nameTable);
             if (tableData != null) {
-                return tableData.getRows().size();
+                return tableData.getRowCount();
             }
             return size;
         }
@@ -253,64 +268,51 @@ public class TableInfoService {
         return tables;
     }
 
-    public List<String[]> getTableLikeList(String table, List<String> column) {
-        List<String[]> source = new ArrayList<>();
-        ArrayList<String> row;
-
+    // Построчное чтение выбранных столбцов таблицы (значения в исходных типах, NULL - null).
+    // Поток нужно закрыть; из БД строки читаются курсором без загрузки всей таблицы
+    public Stream<Object[]> streamRows(String table, List<String> column) {
         if (table == null || column == null || column.isEmpty()) {
-            return source;
+            return Stream.empty();
         }
 
-        AttributeTypeDto attributeTypeDto = new AttributeTypeDto();
         if (dataSourceType == DataSourceType.CSV) {
             TableData tableData = csvTables.get(table);
             if (tableData == null) {
-                return source;
+                return Stream.empty();
             }
-            for (List<String> csvRow : tableData.getRows()) {
-                row = new ArrayList<>();
-                for (String col : column) {
-                    int columnIndex = tableData.getColumnNames().indexOf(col);
-                    if (columnIndex >= 0 && columnIndex < csvRow.size()) {
-                        String value = csvRow.get(columnIndex);
-                        row.add(Optional.ofNullable(value).orElse("NULL"));
-                    }
-                }
-                source.add(row.toArray(new String[0]));
+            int[] columnIndexes = column.stream()
+                    .mapToInt(tableData::getColumnIndex)
+                    .filter(index -> index >= 0)
+                    .toArray();
+            if (columnIndexes.length == 0) {
+                return Stream.empty();
             }
-            return source;
+            return IntStream.range(0, tableData.getRowCount()).mapToObj(row -> {
+                Object[] values = new Object[columnIndexes.length];
+                for (int j = 0; j < columnIndexes.length; j++) {
+                    values[j] = tableData.getValue(row, columnIndexes[j]);
+                }
+                return values;
+            });
         }
 
         if (dataSourceType == DataSourceType.NONE || !connection.isConnected()) {
-            return source;
+            return Stream.empty();
         }
         try {
-            for (String col : column) {
-                attributeTypeDto.setTable(table);
-                attributeTypeDto.setColumn(col);
-            }
-
-            ResultSet resultSet = connection.executeQuery("SELECT * FROM " + table + ";");
-            while (resultSet.next()) {
-                row = new ArrayList<>();
-
-                for (String col : column) {
-                    attributeTypeDto.setTable(table);
-                    attributeTypeDto.setColumn(col);
-
-                    Object value = resultSet.getObject(col);
-                    if (value != null) {
-                        row.add(value.toString());
-                    } else {
-                        row.add("NULL");
-                    }
-                }
-                source.add(row.toArray(new String[0]));
-            }
+            return connection.streamQuery("SELECT " + String.join(", ", column) + " FROM " + table + ";");
         } catch (SQLException e) {
             throw new RuntimeException(e);
         }
-        return source;
+    }
+
+    // Текстовый вид строки для подсчёта классов эквивалентности: NULL - строка "NULL"
+    public static String[] toText(Object[] row) {
+        String[] values = new String[row.length];
+        for (int i = 0; i < row.length; i++) {
+            values[i] = row[i] == null ? "NULL" : row[i].toString();
+        }
+        return values;
     }
 
     public String getAttributeType(String tableName, String columnName) {
@@ -384,12 +386,10 @@ public class TableInfoService {
         }
 
         List<String> values = new ArrayList<>();
-        for (List<String> row : tableData.getRows()) {
-            if (columnIndex < row.size()) {
-                String value = row.get(columnIndex);
-                if (value != null) {
-                    values.add(value);
-                }
+        for (int i = 0; i < tableData.getRowCount(); i++) {
+            String value = tableData.getValue(i, columnIndex);
+            if (value != null) {
+                values.add(value);
             }
         }
         return detectTypeByPriority(values);
@@ -492,9 +492,9 @@ public class TableInfoService {
         }
 
         int startIndex = Math.max(page, 0) * PAGE_SIZE;
-        int endIndex = Math.min(startIndex + PAGE_SIZE, tableData.getRows().size());
-        for (List<String> rowData : tableData.getRows().subList(Math.min(startIndex, tableData.getRows().size()), endIndex)) {
-            ObservableList<String> row = FXCollections.observableArrayList(rowData);
+        int endIndex = Math.min(startIndex + PAGE_SIZE, tableData.getRowCount());
+        for (int i = startIndex; i < endIndex; i++) {
+            ObservableList<String> row = FXCollections.observableArrayList(tableData.getRow(i));
             data.add(row);
         }
         tableview.setItems(data);
@@ -0,0 +1,193 @@
+package ru.data.anonymization.tool.util;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Потоковое чтение CSV: файл читается порциями, в памяти хранится только текущая запись.
+ * Поддерживаются поля в кавычках (с разделителями, переводами строк и удвоенными кавычками внутри).
+ * Разделитель - ";" если он есть в строке заголовков, иначе ",".
+ * Пустые строки пропускаются, столбцы с пустым заголовком отбрасываются.
+ */
+public class CsvReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final RecordParser parser;
+    private final List<String> headers = new ArrayList<>();
+    private final int[] headerIndexes;
+
+    public CsvReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.fileSize = channel.size();
+        Reader reader = new BufferedReader(
+                Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE), BUFFER_SIZE);
+
+        this.parser = new RecordParser(reader);
+        String headerLine = parser.readLine();
+        if (headerLine == null) {
+            close();
+            throw new IOException("Файл пустой или недоступен");
+        }
+        char delimiter = headerLine.contains(";") ? ';' : ',';
+        parser.delimiter = delimiter;
+
+        RecordParser headerParser = new RecordParser(new StringReader(headerLine));
+        headerParser.delimiter = delimiter;
+        List<String> rawHeaders = headerParser.readRecord();
+        List<Integer> indexes = new ArrayList<>();
+        for (int i = 0; i < rawHeaders.size(); i++) {
+            if (!rawHeaders.get(i).isBlank()) {
+                headers.add(rawHeaders.get(i));
+                indexes.add(i);
+            }
+        }
+        if (headers.isEmpty()) {
+            close();
+            throw new IOException("Файл не содержит валидных заголовков столбцов");
+        }
+        this.headerIndexes = indexes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public List<String> getHeaders() {
+        return headers;
+    }
+
+    // Следующая запись, выровненная по столбцам заголовка, или null в конце файла
+    public String[] next() throws IOException {
+        List<String> record;
+        do {
+            record = parser.readRecord();
+            if (record == null) {
+                return null;
+            }
+        } while (record.size() == 1 && record.get(0).isEmpty());
+
+        String[] row = new String[headerIndexes.length];
+        for (int i = 0; i < row.length; i++) {
+            row[i] = headerIndexes[i] < record.size() ? record.get(headerIndexes[i]) : "";
+        }
+        return row;
+    }
+
+    // Доля прочитанного файла от 0 до 1
+    public double getProgress() {
+        if (fileSize == 0) {
+            return 1;
+        }
+        try {
+            return Math.min(1.0, (double) channel.position() / fileSize);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private static class RecordParser {
+        private final Reader reader;
+        private final StringBuilder field = new StringBuilder();
+        private char delimiter = ',';
+        private int pushedBack = -1;
+
+        RecordParser(Reader reader) {
+            this.reader = reader;
+        }
+
+        // Первая непустая строка без разбора на поля; переводы строк внутри кавычек сохраняются
+        String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            boolean quoted = false;
+            int c;
+            while ((c = read()) != -1) {
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && (c == '\n' || c == '\r')) {
+                    skipLineFeed(c);
+                    if (!line.toString().isBlank()) {
+                        return line.toString();
+                    }
+                    line.setLength(0);
+                    continue;
+                }
+                line.append((char) c);
+            }
+            return line.toString().isBlank() ? null : line.toString();
+        }
+
+        List<String> readRecord() throws IOException {
+            int c = read();
+            if (c == -1) {
+                return null;
+            }
+            List<String> record = new ArrayList<>();
+            while (true) {
+                field.setLength(0);
+                while (c == ' ' || c == '\t') {
+                    c = read();
+                }
+                if (c == '"') {
+                    c = readQuoted();
+                }
+                while (c != -1 && c != delimiter && c != '\n' && c != '\r') {
+                    field.append((char) c);
+                    c = read();
+                }
+                record.add(field.toString().trim());
+                if (c != delimiter) {
+                    skipLineFeed(c);
+                    return record;
+                }
+                c = read();
+            }
+        }
+
+        // Дописывает содержимое поля в кавычках и возвращает первый символ после закрывающей кавычки
+        private int readQuoted() throws IOException {
+            int c;
+            while ((c = read()) != -1) {
+                if (c == '"') {
+                    int next = read();
+                    if (next != '"') {
+                        return next;
+                    }
+                }
+                field.append((char) c);
+            }
+            return -1;
+        }
+
+        private void skipLineFeed(int c) throws IOException {
+            if (c == '\r') {
+                int next = read();
+                if (next != '\n') {
+                    pushedBack = next;
+                }
+            }
+        }
+
+        private int read() throws IOException {
+            if (pushedBack != -1) {
+                int c = pushedBack;
+                pushedBack = -1;
+                return c;
+            }
+            return reader.read();
+        }
+    }
+}
@@ -1,9 +1,20 @@
 package ru.data.anonymization.tool.util;
 
-import java.util.stream.LongStream;
-
 public class Factorial {
+    // 20! - наибольший факториал, который помещается в long
+    private static final long[] TABLE = new long[21];
+
+    static {
+        TABLE[0] = 1;
+        for (int i = 1; i < TABLE.length; i++) {
+            TABLE[i] = TABLE[i - 1] * i;
+        }
+    }
+
     public static long calculate(int n) {
-        return LongStream.rangeClosed(1, n).reduce(1, (long x, long y) -> x * y);
+        if (n < 0 || n >= TABLE.length) {
+            throw new IllegalArgumentException("Факториал " + n + " не помещается в long");
+        }
+        return TABLE[n];
     }
 }
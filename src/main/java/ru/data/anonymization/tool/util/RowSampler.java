@@ -0,0 +1,66 @@
+package ru.data.anonymization.tool.util;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Выборка строк по номерам за один проход. Результат - битовая маска выбранных строк,
+ * дополнительная память не зависит от размера выборки.
+ */
+public final class RowSampler {
+
+    private RowSampler() {
+    }
+
+    public static int sampleSize(int total, int percent) {
+        return (int) Math.round((total * (double) percent) / 100);
+    }
+
+    // Алгоритм S (Кнут): строка выбирается с вероятностью (осталось выбрать) / (осталось строк),
+    // поэтому выбирается ровно count строк
+    public static BitSet select(int total, int count, SplittableRandom random) {
+        BitSet selected = new BitSet(total);
+        int needed = Math.min(count, total);
+        for (int row = 0; row < total && needed > 0; row++) {
+            if (random.nextInt(total - row) < needed) {
+                selected.set(row);
+                needed--;
+            }
+        }
+        return selected;
+    }
+
+    // В каждой страте выбирается своя доля percent тем же алгоритмом; strata[row] - номер страты строки
+    public static BitSet selectStratified(int[] strata, int strataCount, int percent, SplittableRandom random) {
+        int[] remaining = new int[strataCount];
+        for (int stratum : strata) {
+            remaining[stratum]++;
+        }
+        int[] needed = new int[strataCount];
+        for (int i = 0; i < strataCount; i++) {
+            needed[i] = sampleSize(remaining[i], percent);
+        }
+
+        BitSet selected = new BitSet(strata.length);
+        for (int row = 0; row < strata.length; row++) {
+            int stratum = strata[row];
+            if (random.nextInt(remaining[stratum]) < needed[stratum]) {
+                selected.set(row);
+                needed[stratum]--;
+            }
+            remaining[stratum]--;
+        }
+        return selected;
+    }
+
+    // Каждая строка выбирается независимо с вероятностью percent (как TABLESAMPLE BERNOULLI)
+    public static BitSet bernoulli(int total, int percent, SplittableRandom random) {
+        BitSet selected = new BitSet(total);
+        for (int row = 0; row < total; row++) {
+            if (random.nextInt(100) < percent) {
+                selected.set(row);
+            }
+        }
+        return selected;
+    }
+}
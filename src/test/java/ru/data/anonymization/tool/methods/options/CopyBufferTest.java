@@ -0,0 +1,107 @@
+package ru.data.anonymization.tool.methods.options;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.core.BaseConnection;
+import ru.data.anonymization.tool.service.DatabaseConnectionService;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CopyBufferTest {
+
+    @Test
+    void writesTextFormat() throws SQLException {
+        RecordingConnection connection = new RecordingConnection();
+        CopyBuffer buffer = new CopyBuffer(connection, "people", List.of("name", "age", "score"));
+        buffer.add("Иван", 30, 1.5);
+        buffer.add(null, 2.0, -0.25f);
+        assertEquals(2, buffer.finish());
+
+        assertEquals(List.of("COPY people (name, age, score) FROM STDIN"), connection.statements);
+        assertEquals("Иван\t30\t1.5\n\\N\t2\t-0.25\n", connection.data());
+    }
+
+    @Test
+    void escapesSpecialCharacters() throws SQLException {
+        RecordingConnection connection = new RecordingConnection();
+        CopyBuffer buffer = new CopyBuffer(connection, "t", List.of("v"));
+        buffer.add("a\\b\tc\nd\re");
+        buffer.finish();
+        assertEquals("a\\\\b\\tc\\nd\\re\n", connection.data());
+    }
+
+    @Test
+    void largeDoublesKeepFractionalForm() throws SQLException {
+        RecordingConnection connection = new RecordingConnection();
+        CopyBuffer buffer = new CopyBuffer(connection, "t", List.of("v"));
+        buffer.add(1e15);
+        buffer.add(-3.0);
+        buffer.finish();
+        assertEquals("1.0E15\n-3\n", connection.data());
+    }
+
+    @Test
+    void flushesWholeRowsInChunks() throws SQLException {
+        RecordingConnection connection = new RecordingConnection();
+        CopyBuffer buffer = new CopyBuffer(connection, "t", List.of("v"));
+        String value = "x".repeat(999);
+        int rows = 3000;
+        for (int i = 0; i < rows; i++) {
+            buffer.add(value);
+        }
+        assertEquals(rows, buffer.getRowCount());
+        assertEquals(rows, buffer.finish());
+
+        assertTrue(connection.chunks.size() > 1);
+        for (String chunk : connection.chunks) {
+            assertTrue(chunk.endsWith("\n"));
+        }
+        assertEquals((value + "\n").repeat(rows), connection.data());
+    }
+
+    @Test
+    void emptyBufferSendsNothing() throws SQLException {
+        RecordingConnection connection = new RecordingConnection();
+        assertEquals(0, new CopyBuffer(connection, "t", List.of("v")).finish());
+        assertTrue(connection.chunks.isEmpty());
+    }
+
+    // Соединение без сервера: COPY только запоминает отправленные порции
+    private static class RecordingConnection extends DatabaseConnectionService {
+        private final List<String> statements = new ArrayList<>();
+        private final List<String> chunks = new ArrayList<>();
+
+        RecordingConnection() {
+            super("localhost", "5432", "postgres", "postgres", "postgres", 1);
+        }
+
+        @Override
+        public CopyManager getCopyManager() throws SQLException {
+            BaseConnection connection = (BaseConnection) Proxy.newProxyInstance(
+                    getClass().getClassLoader(), new Class<?>[]{BaseConnection.class}, (proxy, method, args) -> null);
+            return new CopyManager(connection) {
+                @Override
+                public long copyIn(String sql, Reader from) throws IOException {
+                    StringWriter writer = new StringWriter();
+                    from.transferTo(writer);
+                    statements.add(sql);
+                    chunks.add(writer.toString());
+                    return 0;
+                }
+            };
+        }
+
+        String data() {
+            return String.join("", chunks);
+        }
+    }
+}
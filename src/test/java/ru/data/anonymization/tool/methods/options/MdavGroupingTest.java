@@ -0,0 +1,76 @@
+package ru.data.anonymization.tool.methods.options;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MdavGroupingTest {
+
+    @Test
+    void everyGroupHasAtLeastKRecords() {
+        Random random = new Random(1);
+        for (int k = 1; k <= 7; k++) {
+            for (int rows : new int[]{k, 2 * k - 1, 3 * k, 3 * k + 1, 100, 1001}) {
+                double[][] columns = randomColumns(random, 2, rows);
+                int[] sizes = sizes(MdavGrouping.group(columns, rows, k));
+                for (int size : sizes) {
+                    // Все группы по k записей, кроме последней: в ней остаток от k до 2k - 1
+                    assertTrue(size >= Math.min(k, rows) && size < 2 * k, "k=" + k + " rows=" + rows);
+                }
+                assertEquals(Math.max(rows / k, 1), sizes.length);
+            }
+        }
+    }
+
+    @Test
+    void separatedClustersFormOwnGroups() {
+        double[][] columns = {{0, 100, 1, 101, 2, 102}};
+        int[] group = MdavGrouping.group(columns, 6, 3);
+        assertEquals(group[0], group[2]);
+        assertEquals(group[0], group[4]);
+        assertEquals(group[1], group[3]);
+        assertEquals(group[1], group[5]);
+        assertTrue(group[0] != group[1]);
+    }
+
+    @Test
+    void meansSkipNulls() {
+        double[][] columns = {{1, 3, Double.NaN, 10}, {Double.NaN, Double.NaN, 5, 7}};
+        int[] group = {0, 0, 1, 1};
+        double[][] means = MdavGrouping.means(columns, group);
+        assertArrayEquals(new double[]{2, 10}, means[0]);
+        assertArrayEquals(new double[]{0, 6}, means[1]);
+    }
+
+    @Test
+    void kBelowOneMeansSingleRecordGroups() {
+        int[] group = MdavGrouping.group(new double[][]{{5, 1, 3}}, 3, 0);
+        assertEquals(3, sizes(group).length);
+    }
+
+    private static double[][] randomColumns(Random random, int count, int rows) {
+        double[][] columns = new double[count][rows];
+        for (double[] column : columns) {
+            for (int row = 0; row < rows; row++) {
+                column[row] = random.nextInt(10) == 0 ? Double.NaN : random.nextGaussian() * 100;
+            }
+        }
+        return columns;
+    }
+
+    private static int[] sizes(int[] group) {
+        int count = 0;
+        for (int g : group) {
+            count = Math.max(count, g + 1);
+        }
+        int[] sizes = new int[count];
+        for (int g : group) {
+            sizes[g]++;
+        }
+        return sizes;
+    }
+}
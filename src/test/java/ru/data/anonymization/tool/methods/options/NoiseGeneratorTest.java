@@ -0,0 +1,73 @@
+package ru.data.anonymization.tool.methods.options;
+
+import org.junit.jupiter.api.Test;
+import ru.data.anonymization.tool.methods.options.NoiseGenerator.Distribution;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoiseGeneratorTest {
+
+    private static final int SIZE = 500_000;
+
+    @Test
+    void sameSeedGivesSameNoise() {
+        for (Distribution distribution : Distribution.values()) {
+            double[] first = NoiseGenerator.generate(SIZE, distribution, 3, 42);
+            double[] second = NoiseGenerator.generate(SIZE, distribution, 3, 42);
+            assertArrayEquals(first, second);
+        }
+    }
+
+    @Test
+    void differentSeedsGiveDifferentNoise() {
+        double[] first = NoiseGenerator.generate(1000, Distribution.GAUSSIAN, 1, 1);
+        double[] second = NoiseGenerator.generate(1000, Distribution.GAUSSIAN, 1, 2);
+        assertFalse(Arrays.equals(first, second));
+    }
+
+    @Test
+    void sigmaIsStandardDeviationForEveryDistribution() {
+        double sigma = 5;
+        for (Distribution distribution : Distribution.values()) {
+            double[] noise = NoiseGenerator.generate(SIZE, distribution, sigma, 7);
+            double sum = 0;
+            double sumOfSquares = 0;
+            for (double value : noise) {
+                sum += value;
+                sumOfSquares += value * value;
+            }
+            double mean = sum / SIZE;
+            double deviation = Math.sqrt(sumOfSquares / SIZE - mean * mean);
+            assertEquals(0, mean, 0.05, distribution.name());
+            assertEquals(sigma, deviation, sigma * 0.02, distribution.name());
+        }
+    }
+
+    @Test
+    void uniformNoiseStaysWithinBounds() {
+        double sigma = 2;
+        double bound = sigma * Math.sqrt(3);
+        for (double value : NoiseGenerator.generate(SIZE, Distribution.UNIFORM, sigma, 3)) {
+            assertTrue(Math.abs(value) <= bound);
+        }
+    }
+
+    @Test
+    void zeroSigmaGivesNoNoise() {
+        for (Distribution distribution : Distribution.values()) {
+            for (double value : NoiseGenerator.generate(1000, distribution, 0, 5)) {
+                assertEquals(0, value, 0);
+            }
+        }
+    }
+
+    @Test
+    void emptyArray() {
+        assertEquals(0, NoiseGenerator.generate(0, Distribution.LAPLACE, 1, 1).length);
+    }
+}
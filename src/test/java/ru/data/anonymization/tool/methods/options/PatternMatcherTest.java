@@ -0,0 +1,84 @@
+package ru.data.anonymization.tool.methods.options;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PatternMatcherTest {
+
+    @Test
+    void literalsFindLowestRule() {
+        PatternMatcher matcher = new PatternMatcher(List.of("hers", "she", "he", "his"));
+        assertEquals(0, matcher.firstMatch("ushers", 0));
+        assertEquals(1, matcher.firstMatch("ushers", 1));
+        assertEquals(2, matcher.firstMatch("ushers", 2));
+        assertEquals(-1, matcher.firstMatch("ushers", 3));
+        assertEquals(2, matcher.firstMatch("the", 0));
+        assertEquals(-1, matcher.firstMatch("hi", 0));
+    }
+
+    @Test
+    void regexesAndLiteralsKeepRuleOrder() {
+        PatternMatcher matcher = new PatternMatcher(List.of("^\\d{3}$", "abc", "[a-c]+z", "b"));
+        assertEquals(0, matcher.firstMatch("123", 0));
+        assertEquals(1, matcher.firstMatch("xabcz", 0));
+        assertEquals(2, matcher.firstMatch("xabcz", 2));
+        assertEquals(3, matcher.firstMatch("b", 0));
+        assertEquals(-1, matcher.firstMatch("1234", 0));
+    }
+
+    @Test
+    void backReferencesAreNotCombined() {
+        PatternMatcher matcher = new PatternMatcher(List.of("(a)x", "(b)\\1"));
+        assertEquals(1, matcher.firstMatch("bb", 0));
+        assertEquals(-1, matcher.firstMatch("ba", 0));
+    }
+
+    @Test
+    void repeatedGroupNamesAreNotCombined() {
+        PatternMatcher matcher = new PatternMatcher(List.of("(?<d>\\d)x", "(?<d>\\d)y"));
+        assertEquals(1, matcher.firstMatch("1y", 0));
+        assertEquals(0, matcher.firstMatch("1x1y", 0));
+        assertEquals(-1, matcher.firstMatch("xy", 0));
+    }
+
+    @Test
+    void matchesLikeCheckingEveryPattern() {
+        Random random = new Random(1);
+        String[] atoms = {"a", "b", "ab", "ba", "a+", "b?a", "[ab]{2}", "^a", "b$", "a.b", "(a|b)b", ""};
+        for (int attempt = 0; attempt < 200; attempt++) {
+            List<String> patterns = random.ints(1 + random.nextInt(8), 0, atoms.length)
+                    .mapToObj(i -> atoms[i] + (random.nextBoolean() ? atoms[random.nextInt(atoms.length)] : ""))
+                    .toList();
+            PatternMatcher matcher = new PatternMatcher(patterns);
+            for (int value = 0; value < 30; value++) {
+                String text = randomText(random);
+                int from = random.nextInt(patterns.size() + 1);
+                assertEquals(bruteForce(patterns, text, from), matcher.firstMatch(text, from),
+                             patterns + " " + text + " " + from);
+            }
+        }
+    }
+
+    private static String randomText(Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(8);
+        for (int i = 0; i < length; i++) {
+            text.append("abc".charAt(random.nextInt(3)));
+        }
+        return text.toString();
+    }
+
+    private static int bruteForce(List<String> patterns, String text, int from) {
+        for (int i = from; i < patterns.size(); i++) {
+            if (Pattern.compile(patterns.get(i)).matcher(text).find()) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,82 @@
+package ru.data.anonymization.tool.methods.risk;
+
+import org.junit.jupiter.api.Test;
+import ru.data.anonymization.tool.util.Factorial;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RiskAssessmentTest {
+
+    private static final double[] PROPORTIONS = {0.01, 0.1, 0.5, 0.9, 0.99};
+
+    @Test
+    void globalRiskMatchesPerClassComputation() {
+        Random random = new Random(3);
+        int[] sizes = new int[1_000_000];
+        long n = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            // В основном малые классы, каждый десятый - из длинного хвоста больших размеров
+            sizes[i] = 1 + (int) Math.min(100_000, Math.abs(random.nextGaussian() * (i % 10 == 0 ? 3000 : 8)));
+            n += sizes[i];
+        }
+        for (double proportion : PROPORTIONS) {
+            double expected = Reference.globalRisk(sizes, proportion, n);
+            assertEquals(expected, RiskAssessment.calculateGlobalRisk(sizes, proportion, n), expected * 1e-10,
+                         "proportion " + proportion);
+        }
+    }
+
+    @Test
+    void riskOfSingleClassMatchesReference() {
+        for (double proportion : PROPORTIONS) {
+            for (int size = 1; size <= 5000; size++) {
+                double expected = Reference.risk(size, proportion);
+                assertEquals(expected, RiskAssessment.calculateGlobalRisk(new int[]{size}, proportion, size),
+                             expected * 1e-12, "size " + size + ", proportion " + proportion);
+            }
+        }
+    }
+
+    @Test
+    void prosecutorMetrics() {
+        int[] sizes = {1, 2, 2, 5};
+        assertEquals(5.0 / 10, RiskAssessment.calculateProsecutorMetricA(sizes, 10, 0.4), 0);
+        assertEquals(1.0, RiskAssessment.calculateProsecutorMetricB(sizes), 0);
+        assertEquals(4.0 / 10, RiskAssessment.calculateProsecutorMetricC(sizes, 10), 0);
+    }
+
+    // Прежняя реализация: риск считается заново для каждого класса, ряд - отдельно для каждого члена
+    private static final class Reference {
+
+        static double globalRisk(int[] classSizes, double proportion, long n) {
+            double sum = 0;
+            for (int classSize : classSizes) {
+                sum += classSize * risk(classSize, proportion);
+            }
+            return sum / n;
+        }
+
+        static double risk(int classSize, double proportion) {
+            double q = 1 - proportion;
+            return switch (classSize) {
+                case 1 -> -Math.log(proportion) * proportion / q;
+                case 2 -> (proportion / Math.pow(q, 2)) * (proportion * Math.log(proportion) + q);
+                case 3 -> (proportion / (2 * Math.pow(q, 3)))
+                          * (q * (3 * q - 2) - 2 * Math.pow(proportion, 2) * Math.log(proportion));
+                default -> {
+                    double sumResult = 1;
+                    for (int i = 1; i < 8; i++) {
+                        double divider = 1;
+                        for (int j = 1; j <= i; j++) {
+                            divider *= classSize + j;
+                        }
+                        sumResult += Factorial.calculate(i) * Math.pow(q, i) / divider;
+                    }
+                    yield sumResult * proportion / classSize;
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package ru.data.anonymization.tool.methods.risk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RiskIndexTest {
+
+    private static final double EPSILON = 1e-9;
+
+    @Test
+    void orderedDistanceMatchesBruteForce() {
+        Random random = new Random(1);
+        for (int attempt = 0; attempt < 50; attempt++) {
+            int values = 2 + random.nextInt(40);
+            List<String[]> rows = randomRows(random, 1 + random.nextInt(500), 1 + random.nextInt(8),
+                                             () -> String.valueOf(random.nextInt(values) * 1.5 - 7));
+            assertEquals(bruteForceOrdered(rows), build(rows).tCloseness(), EPSILON);
+        }
+    }
+
+    @Test
+    void orderedDistanceSkipsNulls() {
+        Random random = new Random(2);
+        List<String[]> rows = randomRows(random, 300, 5,
+                                         () -> random.nextInt(5) == 0 ? null : String.valueOf(random.nextInt(20)));
+        assertEquals(bruteForceOrdered(rows), build(rows).tCloseness(), EPSILON);
+    }
+
+    @Test
+    void equalDistanceMatchesBruteForce() {
+        Random random = new Random(3);
+        for (int attempt = 0; attempt < 50; attempt++) {
+            int values = 1 + random.nextInt(30);
+            List<String[]> rows = randomRows(random, 1 + random.nextInt(500), 1 + random.nextInt(8),
+                                             () -> "v" + random.nextInt(values));
+            assertEquals(bruteForceEqual(rows), build(rows).tCloseness(), EPSILON);
+        }
+    }
+
+    @Test
+    void orderedDistanceOfExtremeClass() {
+        // Класс со значением 0 (или 10) при значениях 0, 5, 10 с равными долями: (2/3 + 1/3) / (m - 1)
+        List<String[]> rows = List.of(
+                new String[]{"a", "0"}, new String[]{"b", "5"}, new String[]{"c", "10"});
+        assertEquals(0.5, build(rows).tCloseness(), EPSILON);
+    }
+
+    @Test
+    void lDiversityMatchesBruteForce() {
+        Random random = new Random(4);
+        List<String[]> rows = randomRows(random, 1000, 20, () -> "v" + random.nextInt(6));
+        RiskIndex index = build(rows);
+
+        Map<String, Map<String, Integer>> classes = histograms(rows);
+        double distinct = Double.POSITIVE_INFINITY;
+        double entropy = Double.POSITIVE_INFINITY;
+        for (Map<String, Integer> histogram : classes.values()) {
+            distinct = Math.min(distinct, histogram.size());
+            double total = histogram.values().stream().mapToInt(Integer::intValue).sum();
+            double h = 0;
+            for (int count : histogram.values()) {
+                h -= count / total * Math.log(count / total);
+            }
+            entropy = Math.min(entropy, Math.exp(h));
+        }
+        assertEquals(distinct, index.distinctLDiversity(), EPSILON);
+        assertEquals(entropy, index.entropyLDiversity(), EPSILON);
+    }
+
+    @Test
+    void entropyLDiversityOfUniformClass() {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            rows.add(new String[]{"a", "v" + i});
+        }
+        RiskIndex index = build(rows);
+        assertEquals(4, index.distinctLDiversity(), EPSILON);
+        assertEquals(4, index.entropyLDiversity(), EPSILON);
+    }
+
+    @Test
+    void kAnonymityAndClassSizes() {
+        RiskIndex index = new RiskIndex(0);
+        index.add(new String[]{"a", "1"}, 3);
+        index.add(new String[]{"a", "2"}, 5);
+        index.add(new String[]{"a", "1"}, 1);
+        assertEquals(2, index.size());
+        assertEquals(9, index.getRowCount());
+        assertEquals(4, index.kAnonymity(), EPSILON);
+        int[] sizes = index.classSizes();
+        Arrays.sort(sizes);
+        assertEquals(List.of(4, 5), Arrays.stream(sizes).boxed().toList());
+    }
+
+    @Test
+    void groupedColumnDecodesEveryGroupingSet() {
+        for (int m = 1; m <= 8; m++) {
+            int allBits = (1 << m) - 1;
+            for (int column = 0; column < m; column++) {
+                int grouping = allBits & ~(1 << (m - 1 - column));
+                assertEquals(column, RiskIndex.groupedColumn(grouping, m));
+            }
+        }
+    }
+
+    @Test
+    void groupedColumnWithSingleAttribute() {
+        assertEquals(0, RiskIndex.groupedColumn(0, 1));
+    }
+
+    // Строка: класс, значение одного чувствительного атрибута
+    private static List<String[]> randomRows(Random random, int count, int classes,
+                                             Supplier<String> value) {
+        List<String[]> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new String[]{"c" + random.nextInt(classes), value.get()});
+        }
+        return rows;
+    }
+
+    private static RiskIndex build(List<String[]> rows) {
+        RiskIndex index = new RiskIndex(1);
+        for (String[] row : rows) {
+            index.add(new String[]{row[0]}, 1);
+            index.addSensitive(new String[]{row[0]}, 0, row[1], 1);
+        }
+        return index;
+    }
+
+    private static Map<String, Map<String, Integer>> histograms(List<String[]> rows) {
+        Map<String, Map<String, Integer>> classes = new HashMap<>();
+        for (String[] row : rows) {
+            classes.computeIfAbsent(row[0], key -> new HashMap<>()).merge(row[1], 1, Integer::sum);
+        }
+        return classes;
+    }
+
+    // Определение упорядоченного EMD: (1 / (m - 1)) * сумма по i |сумма по j <= i (p_j - q_j)|
+    private static double bruteForceOrdered(List<String[]> rows) {
+        TreeMap<Double, Integer> overall = new TreeMap<>();
+        for (String[] row : rows) {
+            if (row[1] != null) {
+                overall.merge(Double.parseDouble(row[1]), 1, Integer::sum);
+            }
+        }
+        List<Double> values = new ArrayList<>(overall.keySet());
+        int m = values.size();
+        double total = overall.values().stream().mapToInt(Integer::intValue).sum();
+        double worst = 0;
+        for (Map<String, Integer> histogram : histograms(rows).values()) {
+            Map<Double, Integer> counts = new HashMap<>();
+            histogram.forEach((value, count) -> {
+                if (value != null) {
+                    counts.merge(Double.parseDouble(value), count, Integer::sum);
+                }
+            });
+            double classTotal = counts.values().stream().mapToInt(Integer::intValue).sum();
+            if (m < 2 || classTotal == 0) continue;
+            double running = 0;
+            double sum = 0;
+            for (double value : values) {
+                running += counts.getOrDefault(value, 0) / classTotal - overall.get(value) / total;
+                sum += Math.abs(running);
+            }
+            worst = Math.max(worst, sum / (m - 1));
+        }
+        return worst;
+    }
+
+    // Равноудалённые значения: половина суммы |p - q| по всем значениям таблицы
+    private static double bruteForceEqual(List<String[]> rows) {
+        Map<String, Integer> overall = new HashMap<>();
+        rows.forEach(row -> overall.merge(row[1], 1, Integer::sum));
+        double worst = 0;
+        for (Map<String, Integer> histogram : histograms(rows).values()) {
+            double classTotal = histogram.values().stream().mapToInt(Integer::intValue).sum();
+            Set<String> values = new HashSet<>(overall.keySet());
+            double sum = 0;
+            for (String value : values) {
+                sum += Math.abs(histogram.getOrDefault(value, 0) / classTotal - overall.get(value) / (double) rows.size());
+            }
+            worst = Math.max(worst, sum / 2);
+        }
+        return worst;
+    }
+}
@@ -0,0 +1,103 @@
+package ru.data.anonymization.tool.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsCommaSeparatedFile() throws IOException {
+        List<String[]> rows = read("id,name\n1,Анна\n2,Пётр\n");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"1", "Анна"}, rows.get(0));
+        assertArrayEquals(new String[]{"2", "Пётр"}, rows.get(1));
+    }
+
+    @Test
+    void semicolonInHeaderSelectsDelimiter() throws IOException {
+        try (CsvReader reader = open("id;amount\n1;2,5\n")) {
+            assertEquals(List.of("id", "amount"), reader.getHeaders());
+            assertArrayEquals(new String[]{"1", "2,5"}, reader.next());
+        }
+    }
+
+    @Test
+    void quotedFieldsKeepDelimitersLineBreaksAndQuotes() throws IOException {
+        List<String[]> rows = read("id,comment\n1,\"a, b\"\n2,\"line\nbreak\"\n3,\"say \"\"hi\"\"\"\n");
+        assertArrayEquals(new String[]{"1", "a, b"}, rows.get(0));
+        assertArrayEquals(new String[]{"2", "line\nbreak"}, rows.get(1));
+        assertArrayEquals(new String[]{"3", "say \"hi\""}, rows.get(2));
+    }
+
+    @Test
+    void skipsBlankLinesAndHandlesCrLf() throws IOException {
+        List<String[]> rows = read("\r\nid,name\r\n\r\n1,a\r\n\r\n2,b");
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[]{"1", "a"}, rows.get(0));
+        assertArrayEquals(new String[]{"2", "b"}, rows.get(1));
+    }
+
+    @Test
+    void dropsColumnsWithBlankHeaderAndPadsShortRows() throws IOException {
+        try (CsvReader reader = open("id,,name\n1,x,a\n2\n")) {
+            assertEquals(List.of("id", "name"), reader.getHeaders());
+            assertArrayEquals(new String[]{"1", "a"}, reader.next());
+            assertArrayEquals(new String[]{"2", ""}, reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    @Test
+    void trimsUnquotedFields() throws IOException {
+        assertArrayEquals(new String[]{"1", "a b"}, read("id, name\n 1 ,  a b \n").get(0));
+    }
+
+    @Test
+    void reportsProgress() throws IOException {
+        try (CsvReader reader = open("id\n" + "1\n".repeat(200_000))) {
+            while (reader.next() != null) {
+                assertTrue(reader.getProgress() <= 1);
+            }
+            assertEquals(1.0, reader.getProgress());
+        }
+    }
+
+    @Test
+    void rejectsEmptyFile() {
+        assertThrows(IOException.class, () -> open("\n\n"));
+        assertThrows(IOException.class, () -> open(",,\n1,2,3\n"));
+    }
+
+    private CsvReader open(String content) throws IOException {
+        Path file = Files.createTempFile(directory, "data", ".csv");
+        Files.writeString(file, content, StandardCharsets.UTF_8);
+        return new CsvReader(file);
+    }
+
+    private List<String[]> read(String content) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (CsvReader reader = open(content)) {
+            String[] row;
+            while ((row = reader.next()) != null) {
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+}
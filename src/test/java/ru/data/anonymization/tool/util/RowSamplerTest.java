@@ -0,0 +1,79 @@
+package ru.data.anonymization.tool.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RowSamplerTest {
+
+    @Test
+    void sampleSizeRoundsHalfUp() {
+        assertEquals(0, RowSampler.sampleSize(0, 50));
+        assertEquals(2, RowSampler.sampleSize(3, 50));
+        assertEquals(1, RowSampler.sampleSize(4, 30));
+        assertEquals(33, RowSampler.sampleSize(333, 10));
+        assertEquals(7, RowSampler.sampleSize(7, 100));
+    }
+
+    @Test
+    void selectsExactlyCountRows() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int total : new int[]{0, 1, 10, 1000}) {
+            for (int count : new int[]{0, 1, total / 2, total, total + 5}) {
+                BitSet selected = RowSampler.select(total, count, random);
+                assertEquals(Math.min(count, total), selected.cardinality());
+                assertTrue(selected.length() <= total);
+            }
+        }
+    }
+
+    @Test
+    void selectionIsUniform() {
+        int total = 10;
+        int[] hits = new int[total];
+        SplittableRandom random = new SplittableRandom(2);
+        int attempts = 100_000;
+        for (int i = 0; i < attempts; i++) {
+            RowSampler.select(total, 3, random).stream().forEach(row -> hits[row]++);
+        }
+        for (int hit : hits) {
+            assertEquals(attempts * 0.3, hit, attempts * 0.01);
+        }
+    }
+
+    @Test
+    void stratifiedTakesShareOfEveryStratum() {
+        int[] strata = new int[1000];
+        int[] sizes = new int[4];
+        SplittableRandom random = new SplittableRandom(3);
+        for (int row = 0; row < strata.length; row++) {
+            // Страта 3 пустая
+            strata[row] = row % 10 == 0 ? 0 : random.nextInt(3) == 0 ? 1 : 2;
+            sizes[strata[row]]++;
+        }
+        BitSet selected = RowSampler.selectStratified(strata, 4, 25, random);
+        int[] taken = new int[4];
+        selected.stream().forEach(row -> taken[strata[row]]++);
+        for (int stratum = 0; stratum < sizes.length; stratum++) {
+            assertEquals(RowSampler.sampleSize(sizes[stratum], 25), taken[stratum]);
+        }
+    }
+
+    @Test
+    void bernoulliKeepsApproximateShare() {
+        BitSet selected = RowSampler.bernoulli(100_000, 30, new SplittableRandom(4));
+        assertEquals(30_000, selected.cardinality(), 1_000);
+        assertEquals(0, RowSampler.bernoulli(1000, 0, new SplittableRandom(4)).cardinality());
+        assertEquals(1000, RowSampler.bernoulli(1000, 100, new SplittableRandom(4)).cardinality());
+    }
+
+    @Test
+    void sameSeedGivesSameSample() {
+        assertEquals(RowSampler.select(10_000, 1234, new SplittableRandom(5)),
+                     RowSampler.select(10_000, 1234, new SplittableRandom(5)));
+    }
+}